@@ -0,0 +1,111 @@
+package ru.example.itktest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.example.itktest.ItkTestApplication;
+import ru.example.itktest.dto.WalletBulkCreateDto;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.service.WalletBulkService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вставка кошельков со случайными (v4) и упорядоченными по времени (v7) ID в большую таблицу
+ * против Postgres в контейнере (Testcontainers, нужен Docker).
+ * <p>
+ * Перед измерением таблица заполняется до preloadRows строк тем же способом генерации ID, затем измеряется
+ * вставка частей по {@value #CHUNK_SIZE} кошельков через WalletBulkService. После измерения выводятся
+ * размер индекса wallets_pkey, средняя заполненность его листовых страниц и доля чтений страниц индекса
+ * не из shared_buffers (128MB по умолчанию в контейнере).
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletIdBenchmark -p preloadRows=50000000}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletIdBenchmark {
+    private static final int CHUNK_SIZE = 10_000;
+
+    @Param({"RANDOM", "TIME_ORDERED"})
+    public String strategy;
+
+    @Param({"10000000"})
+    public int preloadRows;
+
+    PostgreSQLContainer<?> postgres;
+    ConfigurableApplicationContext context;
+    WalletBulkService walletBulkService;
+    JdbcTemplate jdbcTemplate;
+    WalletBulkCreateDto chunk;
+
+    @Setup(Level.Trial)
+    public void start() {
+        postgres = new PostgreSQLContainer<>("postgres:15")
+                .withCommand("postgres", "-c", "max_wal_size=8GB", "-c", "synchronous_commit=off");
+        postgres.start();
+
+        SpringApplication application = new SpringApplication(ItkTestApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        context = application.run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                "--spring.datasource.username=" + postgres.getUsername(),
+                "--spring.datasource.password=" + postgres.getPassword(),
+                "--spring.jpa.show-sql=false",
+                "--wallet.id.strategy=" + strategy,
+                "--wallet.bulk.chunk-size=" + CHUNK_SIZE);
+        walletBulkService = context.getBean(WalletBulkService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        chunk = new WalletBulkCreateDto(CHUNK_SIZE, null, null);
+
+        for (int rows = 0; rows < preloadRows; rows += CHUNK_SIZE) {
+            walletBulkService.createChunk(chunk, 0);
+        }
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pgstattuple");
+        jdbcTemplate.execute("SELECT pg_stat_reset()");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        Map<String, Object> index = jdbcTemplate.queryForMap("""
+                SELECT pg_size_pretty(pg_relation_size('wallets_pkey')) AS size,
+                       (SELECT avg_leaf_density FROM pgstatindex('wallets_pkey')) AS leaf_density,
+                       round(100.0 * idx_blks_read / nullif(idx_blks_read + idx_blks_hit, 0), 2) AS read_percent,
+                       (SELECT count(*) FROM wallets) AS rows
+                FROM pg_statio_user_indexes
+                WHERE indexrelname = 'wallets_pkey'
+                """);
+        System.out.printf("%n%s: строк %s, wallets_pkey %s, заполненность листьев %s%%, чтений не из кэша %s%%%n",
+                strategy, index.get("rows"), index.get("size"), index.get("leaf_density"), index.get("read_percent"));
+        context.close();
+        postgres.stop();
+    }
+
+    /**
+     * Одна часть из {@value #CHUNK_SIZE} кошельков
+     */
+    @Benchmark
+    public List<WalletDto> insertChunk() {
+        return walletBulkService.createChunk(chunk, 0);
+    }
+}
@@ -0,0 +1,86 @@
+package ru.example.itktest.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.example.itktest.codec.WalletOperationCodec;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение тела запроса WalletOperationDto и запись ответа WalletDto в JSON.
+ * ObjectMapper настраивается так же, как в приложении (Jackson2ObjectMapperBuilder).
+ * codec* - тот же путь через потоковый WalletOperationCodec, которым приложение обрабатывает POST /api/v1/wallet;
+ * codecReadOperation включает проверку операции, которую для ObjectMapper выполняет отдельно Bean Validation.
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletJsonBenchmark -prof gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletJsonBenchmark {
+    private ObjectReader operationReader;
+    private ObjectWriter walletWriter;
+    private byte[] operationJson;
+    private WalletDto wallet;
+    private WalletOperationCodec codec;
+    private ByteArrayOutputStream codecOut;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        operationReader = objectMapper.readerFor(WalletOperationDto.class);
+        walletWriter = objectMapper.writerFor(WalletDto.class);
+        operationJson = objectMapper.writeValueAsBytes(
+                new WalletOperationDto(UUID.randomUUID(), OperationType.DEPOSIT, new BigDecimal("100.50")));
+        wallet = new WalletDto(UUID.randomUUID(), new BigDecimal("1000.00"));
+        codec = new WalletOperationCodec(objectMapper);
+        codecOut = new ByteArrayOutputStream(128);
+    }
+
+    @Benchmark
+    public WalletOperationDto readOperation() throws IOException {
+        return operationReader.readValue(operationJson);
+    }
+
+    @Benchmark
+    public byte[] writeWallet() throws IOException {
+        return walletWriter.writeValueAsBytes(wallet);
+    }
+
+    @Benchmark
+    public WalletOperationDto codecReadOperation() throws IOException {
+        WalletOperationDto dto = codec.read(new ByteArrayInputStream(operationJson));
+        WalletOperationCodec.validate(dto);
+        return dto;
+    }
+
+    @Benchmark
+    public int codecWriteWallet() throws IOException {
+        codecOut.reset();
+        codec.write(wallet, codecOut);
+        return codecOut.size();
+    }
+}
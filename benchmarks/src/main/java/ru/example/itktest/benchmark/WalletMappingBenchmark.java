@@ -0,0 +1,71 @@
+package ru.example.itktest.benchmark;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.mapper.WalletMapper;
+import ru.example.itktest.model.Wallet;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение рефлективного ModelMapper и WalletMapper на маппинге Wallet -> WalletDto.
+ * Запускается с профилировщиком GC: gc.alloc.rate.norm показывает количество байт, выделяемых на один маппинг.
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletMappingBenchmark -prof gc}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletMappingBenchmark {
+    private ModelMapper modelMapper;
+    private WalletMapper walletMapper;
+    private Wallet wallet;
+
+    @Setup
+    public void setup() {
+        modelMapper = new ModelMapper();
+        walletMapper = new WalletMapper();
+        wallet = Wallet.builder()
+                .id(UUID.randomUUID())
+                .amount(1000_00)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public WalletDto modelMapper() {
+        return modelMapper.map(wallet, WalletDto.class);
+    }
+
+    @Benchmark
+    public WalletDto walletMapper() {
+        return walletMapper.toDto(wallet);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WalletMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,134 @@
+package ru.example.itktest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.example.itktest.ItkTestApplication;
+import ru.example.itktest.binary.WalletBinaryClient;
+import ru.example.itktest.binary.WalletBinaryResponse;
+import ru.example.itktest.binary.WalletBinaryServer;
+import ru.example.itktest.model.OperationType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * REST против двоичного протокола на запущенном приложении с Postgres в контейнере (Testcontainers, нужен Docker).
+ * Каждый поток работает со своим кошельком: пополнение и баланс через HTTP/JSON (java.net.http, keep-alive)
+ * и через WalletBinaryClient по общему соединению; binaryDepositPipelined отправляет
+ * {@value #PIPELINE_DEPTH} пополнений, не дожидаясь ответов.
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletProtocolBenchmark -prof gc}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class WalletProtocolBenchmark {
+    private static final int PIPELINE_DEPTH = 16;
+
+    @State(Scope.Benchmark)
+    public static class Application {
+        PostgreSQLContainer<?> postgres;
+        ConfigurableApplicationContext context;
+        HttpClient httpClient;
+        WalletBinaryClient binaryClient;
+        String baseUrl;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            postgres = new PostgreSQLContainer<>("postgres:15");
+            postgres.start();
+
+            context = new SpringApplication(ItkTestApplication.class).run(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                    "--spring.datasource.username=" + postgres.getUsername(),
+                    "--spring.datasource.password=" + postgres.getPassword(),
+                    "--spring.jpa.show-sql=false",
+                    "--server.port=0",
+                    "--wallet.binary.enabled=true",
+                    "--wallet.binary.port=0");
+            baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1/wallet";
+            httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            binaryClient = WalletBinaryClient.connect("127.0.0.1", context.getBean(WalletBinaryServer.class).getPort());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            binaryClient.close();
+            context.close();
+            postgres.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadWallet {
+        UUID id;
+        HttpRequest restDeposit;
+        HttpRequest restBalance;
+
+        @Setup(Level.Trial)
+        public void create(Application application) {
+            id = application.binaryClient.create().walletId();
+            restDeposit = HttpRequest.newBuilder(URI.create(application.baseUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"valletId\":\"" + id + "\",\"operationType\":\"DEPOSIT\",\"amount\":1.00}"))
+                    .build();
+            restBalance = HttpRequest.newBuilder(URI.create(application.baseUrl + "/" + id)).GET().build();
+        }
+    }
+
+    @Benchmark
+    public String restDeposit(Application application, ThreadWallet wallet) throws Exception {
+        return application.httpClient.send(wallet.restDeposit, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String restBalance(Application application, ThreadWallet wallet) throws Exception {
+        return application.httpClient.send(wallet.restBalance, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public WalletBinaryResponse binaryDeposit(Application application, ThreadWallet wallet) {
+        return application.binaryClient.operate(wallet.id, OperationType.DEPOSIT, 1_00);
+    }
+
+    @Benchmark
+    public WalletBinaryResponse binaryBalance(Application application, ThreadWallet wallet) {
+        return application.binaryClient.balance(wallet.id);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public WalletBinaryResponse binaryDepositPipelined(Application application, ThreadWallet wallet) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<WalletBinaryResponse>[] responses = new CompletableFuture[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            responses[i] = application.binaryClient.operateAsync(wallet.id, OperationType.DEPOSIT, 1_00, null, null);
+        }
+        return CompletableFuture.allOf(responses).thenApply(ignored -> responses[PIPELINE_DEPTH - 1].join()).join();
+    }
+}
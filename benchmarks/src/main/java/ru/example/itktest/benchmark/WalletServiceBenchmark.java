@@ -0,0 +1,111 @@
+package ru.example.itktest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.example.itktest.ItkTestApplication;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.service.WalletService;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WalletService.walletOperation против Postgres в контейнере (Testcontainers, нужен Docker).
+ * Контекст приложения поднимается без веб-сервера, поэтому измеряется только сервис и обращение к БД:
+ * операции над собственным кошельком каждого потока и над одним общим кошельком.
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletServiceBenchmark -prof gc}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class WalletServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+        PostgreSQLContainer<?> postgres;
+        ConfigurableApplicationContext context;
+        WalletService walletService;
+        UUID hotWalletId;
+
+        @Setup(Level.Trial)
+        public void start() {
+            postgres = new PostgreSQLContainer<>("postgres:15");
+            postgres.start();
+
+            SpringApplication application = new SpringApplication(ItkTestApplication.class);
+            application.setWebApplicationType(WebApplicationType.NONE);
+            context = application.run(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                    "--spring.datasource.username=" + postgres.getUsername(),
+                    "--spring.datasource.password=" + postgres.getPassword(),
+                    "--spring.jpa.show-sql=false");
+            walletService = context.getBean(WalletService.class);
+            hotWalletId = walletService.createWallet().getId();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+            postgres.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadWallet {
+        WalletOperationDto deposit;
+        WalletOperationDto withdraw;
+        WalletOperationDto hotDeposit;
+
+        @Setup(Level.Trial)
+        public void create(Application application) {
+            UUID id = application.walletService.createWallet().getId();
+            deposit = new WalletOperationDto(id, OperationType.DEPOSIT, BigDecimal.ONE);
+            withdraw = new WalletOperationDto(id, OperationType.WITHDRAW, BigDecimal.ONE);
+            hotDeposit = new WalletOperationDto(application.hotWalletId, OperationType.DEPOSIT, BigDecimal.ONE);
+        }
+    }
+
+    @Benchmark
+    public WalletDto depositOwnWallet(Application application, ThreadWallet wallet) {
+        return application.walletService.walletOperation(wallet.deposit);
+    }
+
+    /**
+     * Пополнение и списание той же суммы, чтобы баланс не рос в течение прогона
+     */
+    @Benchmark
+    public WalletDto depositWithdrawOwnWallet(Application application, ThreadWallet wallet) {
+        application.walletService.walletOperation(wallet.deposit);
+        return application.walletService.walletOperation(wallet.withdraw);
+    }
+
+    /**
+     * Все потоки пополняют один кошелек: конкуренция за блокировку строки
+     */
+    @Benchmark
+    public WalletDto depositHotWallet(Application application, ThreadWallet wallet) {
+        return application.walletService.walletOperation(wallet.hotDeposit);
+    }
+}
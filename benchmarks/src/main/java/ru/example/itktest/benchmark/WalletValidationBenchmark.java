@@ -0,0 +1,66 @@
+package ru.example.itktest.benchmark;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка WalletOperationDto через Bean Validation (Hibernate Validator), как при @Valid в контроллере:
+ * корректный запрос и запрос с ошибкой, для которой строится сообщение нарушения.
+ * <p>
+ * Запуск: {@code java -jar benchmarks/target/benchmarks.jar WalletValidationBenchmark -prof gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletValidationBenchmark {
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private WalletOperationDto valid;
+    private WalletOperationDto invalid;
+
+    @Setup
+    public void setup() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        valid = new WalletOperationDto(UUID.randomUUID(), OperationType.DEPOSIT, new BigDecimal("100"));
+        invalid = new WalletOperationDto(UUID.randomUUID(), OperationType.WITHDRAW, new BigDecimal("-1"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<WalletOperationDto>> validOperation() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<WalletOperationDto>> invalidOperation() {
+        return validator.validate(invalid);
+    }
+}
@@ -0,0 +1,4 @@
+#!/bin/bash
+# Разрешение подключений репликации для пользователя приложения (выполняется при инициализации пустого тома)
+set -e
+echo "host replication $POSTGRES_USER all scram-sha-256" >> "$PGDATA/pg_hba.conf"
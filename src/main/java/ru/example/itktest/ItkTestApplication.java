@@ -2,8 +2,10 @@ package ru.example.itktest;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ItkTestApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,191 @@
+package ru.example.itktest.binary;
+
+import ru.example.itktest.model.OperationType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Клиент двоичного протокола ({@link WalletBinaryProtocol}).
+ * <p>
+ * Одно соединение можно использовать из нескольких потоков: async-методы отправляют запрос, не дожидаясь
+ * ответов на предыдущие, а ответы сопоставляются с запросами по ID в отдельном потоке чтения. Синхронные
+ * методы ждут ответа и выбрасывают {@link WalletBinaryException} со статусом при ошибке. Суммы - в копейках.
+ * Клиент зависит только от JDK и OperationType.
+ */
+public class WalletBinaryClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final Map<Integer, CompletableFuture<WalletBinaryResponse>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private volatile boolean closed;
+
+    private WalletBinaryClient(SocketChannel channel) {
+        this.channel = channel;
+        Thread reader = new Thread(this::readResponses, "wallet-binary-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Подключение к серверу
+     * @param host адрес сервера
+     * @param port порт сервера (wallet.binary.port)
+     */
+    public static WalletBinaryClient connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return new WalletBinaryClient(channel);
+    }
+
+    public CompletableFuture<WalletBinaryResponse> createAsync() {
+        int requestId = nextRequestId.incrementAndGet();
+        return send(requestId, WalletBinaryProtocol.create(requestId));
+    }
+
+    public CompletableFuture<WalletBinaryResponse> balanceAsync(UUID walletId) {
+        int requestId = nextRequestId.incrementAndGet();
+        return send(requestId, WalletBinaryProtocol.balance(requestId, walletId));
+    }
+
+    /**
+     * Операция над кошельком
+     * @param walletId кошелька
+     * @param type тип операции
+     * @param amount сумма в копейках
+     * @param targetId кошелек получателя для перевода, либо null
+     * @param idempotencyKey ключ идемпотентности, либо null
+     * @return кошелек (для перевода - кошелек отправителя) после операции
+     */
+    public CompletableFuture<WalletBinaryResponse> operateAsync(UUID walletId, OperationType type, long amount,
+                                                                UUID targetId, String idempotencyKey) {
+        int requestId = nextRequestId.incrementAndGet();
+        return send(requestId, WalletBinaryProtocol.operate(requestId, walletId, type, amount, targetId, idempotencyKey));
+    }
+
+    public WalletBinaryResponse create() {
+        return await(createAsync());
+    }
+
+    public WalletBinaryResponse balance(UUID walletId) {
+        return await(balanceAsync(walletId));
+    }
+
+    public WalletBinaryResponse operate(UUID walletId, OperationType type, long amount) {
+        return await(operateAsync(walletId, type, amount, null, null));
+    }
+
+    public WalletBinaryResponse operate(UUID walletId, OperationType type, long amount, UUID targetId, String idempotencyKey) {
+        return await(operateAsync(walletId, type, amount, targetId, idempotencyKey));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+        failPending(new IOException("Соединение закрыто"));
+    }
+
+    private CompletableFuture<WalletBinaryResponse> send(int requestId, ByteBuffer frame) {
+        CompletableFuture<WalletBinaryResponse> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        if (closed && pending.remove(requestId) != null) {
+            future.completeExceptionally(new UncheckedIOException(new IOException("Соединение закрыто")));
+            return future;
+        }
+        try {
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(new UncheckedIOException(e));
+        }
+        return future;
+    }
+
+    private static WalletBinaryResponse await(CompletableFuture<WalletBinaryResponse> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Цикл потока чтения ответов.
+     * При ошибке чтения или разбора ответа соединение закрывается, а ожидающие запросы завершаются исключением.
+     */
+    private void readResponses() {
+        ByteBuffer length = ByteBuffer.allocate(WalletBinaryProtocol.LENGTH_SIZE);
+        try {
+            while (!closed) {
+                length.clear();
+                readFully(length);
+                int frameLength = length.getInt(0);
+                if (frameLength < 6 || frameLength > WalletBinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Некорректная длина кадра: " + frameLength);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(frameLength);
+                readFully(frame);
+                frame.flip();
+
+                CompletableFuture<WalletBinaryResponse> future = pending.remove(frame.getInt());
+                short status = frame.getShort();
+                if (future == null) {
+                    continue;
+                }
+                if (status == WalletBinaryProtocol.OK) {
+                    future.complete(new WalletBinaryResponse(WalletBinaryProtocol.getUuid(frame), frame.getLong()));
+                } else {
+                    future.completeExceptionally(new WalletBinaryException(status, WalletBinaryProtocol.getString(frame)));
+                }
+            }
+        } catch (Throwable e) {
+            // после любой ошибки поток чтения завершается: ответы на ожидающие запросы уже не придут
+            IOException cause = e instanceof IOException io ? io : new IOException("Ошибка чтения ответа", e);
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                cause.addSuppressed(closeError);
+            }
+            failPending(cause);
+            if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Сервер закрыл соединение");
+            }
+        }
+    }
+
+    private void failPending(IOException cause) {
+        closed = true;
+        pending.keySet().forEach(requestId -> {
+            CompletableFuture<WalletBinaryResponse> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(new UncheckedIOException(cause));
+            }
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package ru.example.itktest.binary;
+
+import lombok.Getter;
+
+/**
+ * Ответ двоичного протокола с ошибкой
+ */
+@Getter
+public class WalletBinaryException extends RuntimeException {
+    /**
+     * Статус ответа, как код HTTP
+     */
+    private final short status;
+
+    public WalletBinaryException(short status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
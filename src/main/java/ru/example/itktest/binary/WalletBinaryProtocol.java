@@ -0,0 +1,174 @@
+package ru.example.itktest.binary;
+
+import ru.example.itktest.model.OperationType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Двоичный протокол операций над кошельками.
+ * <p>
+ * Каждый кадр начинается с длины оставшейся части (int, big-endian). Запрос: ID запроса (int), код команды (byte)
+ * и данные команды. Ответ: ID запроса (int), статус (short, как код HTTP) и данные: ID кошелька и баланс в копейках
+ * (long) при успехе, длина (short) и текст сообщения в UTF-8 при ошибке. ID запроса выбирает клиент, ответы
+ * возвращаются по мере готовности, поэтому по одному соединению можно отправлять запросы не дожидаясь ответов.
+ * <ul>
+ *     <li>{@link #CREATE} - без данных</li>
+ *     <li>{@link #OPERATE} - ID кошелька, тип операции (byte), сумма в копейках (long), флаг получателя (byte)
+ *     и ID получателя при флаге 1, длина (short) и ключ идемпотентности в UTF-8</li>
+ *     <li>{@link #BALANCE} - ID кошелька</li>
+ * </ul>
+ * UUID передается двумя long: старшие и младшие биты.
+ */
+public final class WalletBinaryProtocol {
+    public static final byte CREATE = 1;
+    public static final byte OPERATE = 2;
+    public static final byte BALANCE = 3;
+
+    public static final short OK = 200;
+    public static final short BAD_REQUEST = 400;
+    public static final short NOT_FOUND = 404;
+    public static final short CONFLICT = 409;
+    public static final short INTERNAL_ERROR = 500;
+    public static final short UNAVAILABLE = 503;
+
+    /**
+     * Размер поля длины кадра
+     */
+    public static final int LENGTH_SIZE = 4;
+
+    /**
+     * Минимальная длина кадра запроса: ID запроса и код команды
+     */
+    public static final int REQUEST_HEADER_SIZE = 5;
+
+    /**
+     * Максимальная длина кадра без поля длины
+     */
+    public static final int MAX_FRAME_LENGTH = 1024;
+
+    private static final int UUID_SIZE = 16;
+    private static final int OK_SIZE = 4 + 2 + UUID_SIZE + 8;
+
+    private WalletBinaryProtocol() {
+    }
+
+    /**
+     * Кадр запроса создания кошелька
+     */
+    public static ByteBuffer create(int requestId) {
+        return header(REQUEST_HEADER_SIZE, requestId, CREATE).flip();
+    }
+
+    /**
+     * Кадр запроса баланса кошелька
+     */
+    public static ByteBuffer balance(int requestId, UUID walletId) {
+        ByteBuffer frame = header(REQUEST_HEADER_SIZE + UUID_SIZE, requestId, BALANCE);
+        putUuid(frame, walletId);
+        return frame.flip();
+    }
+
+    /**
+     * Кадр запроса операции над кошельком
+     * @param targetId кошелек получателя для перевода, либо null
+     * @param idempotencyKey ключ идемпотентности, либо null
+     */
+    public static ByteBuffer operate(int requestId, UUID walletId, OperationType type, long amount,
+                                     UUID targetId, String idempotencyKey) {
+        byte[] key = idempotencyKey == null ? new byte[0] : idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        int length = REQUEST_HEADER_SIZE + UUID_SIZE + 1 + 8 + 1 + (targetId == null ? 0 : UUID_SIZE) + 2 + key.length;
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинный ключ идемпотентности");
+        }
+        ByteBuffer frame = header(length, requestId, OPERATE);
+        putUuid(frame, walletId);
+        frame.put(typeCode(type));
+        frame.putLong(amount);
+        if (targetId == null) {
+            frame.put((byte) 0);
+        } else {
+            frame.put((byte) 1);
+            putUuid(frame, targetId);
+        }
+        frame.putShort((short) key.length);
+        frame.put(key);
+        return frame.flip();
+    }
+
+    /**
+     * Кадр успешного ответа
+     */
+    public static ByteBuffer ok(int requestId, UUID walletId, long amount) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_SIZE + OK_SIZE);
+        frame.putInt(OK_SIZE);
+        frame.putInt(requestId);
+        frame.putShort(OK);
+        putUuid(frame, walletId);
+        frame.putLong(amount);
+        return frame.flip();
+    }
+
+    /**
+     * Кадр ответа с ошибкой
+     */
+    public static ByteBuffer error(int requestId, short status, String message) {
+        byte[] text = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        int textLength = Math.min(text.length, MAX_FRAME_LENGTH - 8);
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_SIZE + 8 + textLength);
+        frame.putInt(8 + textLength);
+        frame.putInt(requestId);
+        frame.putShort(status);
+        frame.putShort((short) textLength);
+        frame.put(text, 0, textLength);
+        return frame.flip();
+    }
+
+    public static void putUuid(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    public static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Длина строки больше длины кадра");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Код типа операции в протоколе; не зависит от порядка констант OperationType
+     */
+    public static byte typeCode(OperationType type) {
+        return switch (type) {
+            case DEPOSIT -> 1;
+            case WITHDRAW -> 2;
+            case TRANSFER -> 3;
+        };
+    }
+
+    public static OperationType type(byte code) {
+        return switch (code) {
+            case 1 -> OperationType.DEPOSIT;
+            case 2 -> OperationType.WITHDRAW;
+            case 3 -> OperationType.TRANSFER;
+            default -> throw new IllegalArgumentException("Неизвестный тип операции: " + code);
+        };
+    }
+
+    private static ByteBuffer header(int length, int requestId, byte command) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_SIZE + length);
+        frame.putInt(length);
+        frame.putInt(requestId);
+        frame.put(command);
+        return frame;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.example.itktest.binary;
+
+import java.util.UUID;
+
+/**
+ * Успешный ответ двоичного протокола
+ * @param walletId ID кошелька
+ * @param amount баланс кошелька в копейках
+ */
+public record WalletBinaryResponse(UUID walletId, long amount) {
+}
@@ -0,0 +1,387 @@
+package ru.example.itktest.binary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import ru.example.itktest.codec.WalletOperationCodec;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.exception.FieldValidationException;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.service.WalletService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервер двоичного протокола ({@link WalletBinaryProtocol}) поверх NIO.
+ * <p>
+ * Один поток с Selector принимает соединения, читает кадры и отправляет ответы; запросы выполняются
+ * через WalletService в пуле рабочих потоков, так же как запросы WalletController. Ответы по соединению
+ * возвращаются в порядке готовности и пишутся пачками (gathering write). Если по соединению выполняется
+ * wallet.binary.max-in-flight запросов, чтение из него приостанавливается до получения ответов.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "wallet.binary.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class WalletBinaryServer implements SmartLifecycle {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    private final WalletService walletService;
+
+    @Value("${wallet.binary.host:127.0.0.1}")
+    private String host;
+
+    @Value("${wallet.binary.port:9090}")
+    private int port;
+
+    @Value("${wallet.binary.worker-threads:16}")
+    private int workerThreads;
+
+    @Value("${wallet.binary.max-in-flight:256}")
+    private int maxInFlight;
+
+    /**
+     * Действия, которые рабочие потоки передают потоку Selector
+     */
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread selectorThread;
+
+    /**
+     * Фактический порт сервера (при wallet.binary.port=0 выбирается системой)
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void start() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(host, port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось запустить сервер двоичного протокола", e);
+        }
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, task -> {
+            Thread thread = new Thread(task, "wallet-binary-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        selectorThread = new Thread(this::run, "wallet-binary-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("Сервер двоичного протокола слушает {}:{}", host, getPort());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Цикл потока Selector
+     */
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Ошибка ожидания событий сервера двоичного протокола", e);
+                break;
+            }
+            Runnable task;
+            while ((task = selectorTasks.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Соединение двоичного протокола закрыто: {}", e.getMessage());
+                    connection.close();
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Ошибка закрытия сервера двоичного протокола", e);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException e) {
+            log.warn("Ошибка приема соединения двоичного протокола", e);
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // соединение уже закрыто
+        }
+    }
+
+    /**
+     * Разбор кадра запроса в действие над WalletService.
+     * Выполняется в потоке Selector, поэтому данные кадра копируются до передачи в рабочий поток.
+     * @param command код команды
+     * @param frame данные команды
+     * @return действие, возвращающее кошелек для ответа
+     */
+    private Callable<WalletDto> decode(byte command, ByteBuffer frame) {
+        switch (command) {
+            case WalletBinaryProtocol.CREATE:
+                return walletService::createWallet;
+            case WalletBinaryProtocol.BALANCE: {
+                UUID id = WalletBinaryProtocol.getUuid(frame);
+                return () -> new WalletDto(id, walletService.getBalance(id).getAmount());
+            }
+            case WalletBinaryProtocol.OPERATE: {
+                WalletOperationDto dto = new WalletOperationDto(
+                        WalletBinaryProtocol.getUuid(frame),
+                        WalletBinaryProtocol.type(frame.get()),
+                        MinorUnits.toDecimal(frame.getLong()));
+                if (frame.get() != 0) {
+                    dto.setTargetId(WalletBinaryProtocol.getUuid(frame));
+                }
+                String key = WalletBinaryProtocol.getString(frame);
+                String idempotencyKey = key.isEmpty() ? null : key;
+                return () -> {
+                    WalletOperationCodec.validate(dto);
+                    return walletService.walletOperation(dto, idempotencyKey);
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Неизвестная команда: " + command);
+        }
+    }
+
+    /**
+     * Выполнение запроса в рабочем потоке.
+     * Ошибки переводятся в статусы так же, как в GlobalExceptionHandler.
+     */
+    private static ByteBuffer execute(int requestId, Callable<WalletDto> action) {
+        try {
+            WalletDto wallet = action.call();
+            return WalletBinaryProtocol.ok(requestId, wallet.getId(), MinorUnits.of(wallet.getAmount()));
+        } catch (WalletNotFoundException e) {
+            return WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.NOT_FOUND, e.getMessage());
+        } catch (InsufficientFundsException e) {
+            return WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.CONFLICT, e.getMessage());
+        } catch (InvalidRequestException | FieldValidationException e) {
+            return WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.BAD_REQUEST, e.getMessage());
+        } catch (CannotCreateTransactionException | CannotGetJdbcConnectionException e) {
+            log.warn("Database unavailable: {}", e.getMessage());
+            return WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.UNAVAILABLE,
+                    "Сервис перегружен, повторите запрос позже");
+        } catch (Exception e) {
+            log.error("Ошибка выполнения запроса двоичного протокола", e);
+            return WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.INTERNAL_ERROR, "Внутренняя ошибка сервера");
+        }
+    }
+
+    /**
+     * Соединение клиента. Все поля, кроме очереди ответов, используются только потоком Selector.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer[] writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+        private int inFlight;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            dispatch();
+        }
+
+        /**
+         * Передача всех полностью прочитанных кадров рабочим потокам, пока не достигнут предел выполняемых запросов
+         */
+        void dispatch() {
+            readBuffer.flip();
+            try {
+                while (inFlight < maxInFlight && readBuffer.remaining() >= WalletBinaryProtocol.LENGTH_SIZE) {
+                    int length = readBuffer.getInt(readBuffer.position());
+                    if (length < WalletBinaryProtocol.REQUEST_HEADER_SIZE || length > WalletBinaryProtocol.MAX_FRAME_LENGTH) {
+                        throw new IllegalStateException("Некорректная длина кадра: " + length);
+                    }
+                    if (readBuffer.remaining() < WalletBinaryProtocol.LENGTH_SIZE + length) {
+                        break;
+                    }
+                    int start = readBuffer.position() + WalletBinaryProtocol.LENGTH_SIZE;
+                    ByteBuffer frame = readBuffer.slice(start, length);
+                    readBuffer.position(start + length);
+
+                    int requestId = frame.getInt();
+                    Callable<WalletDto> action;
+                    try {
+                        action = decode(frame.get(), frame);
+                    } catch (BufferUnderflowException | IllegalArgumentException e) {
+                        respond(WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.BAD_REQUEST, "Некорректный запрос"));
+                        continue;
+                    }
+                    inFlight++;
+                    try {
+                        workers.execute(() -> complete(execute(requestId, action)));
+                    } catch (RejectedExecutionException e) {
+                        inFlight--;
+                        respond(WalletBinaryProtocol.error(requestId, WalletBinaryProtocol.UNAVAILABLE, "Сервер останавливается"));
+                    }
+                }
+            } finally {
+                readBuffer.compact();
+            }
+            int ops = key.interestOps();
+            key.interestOps(inFlight < maxInFlight ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+        }
+
+        /**
+         * Ответ из рабочего потока
+         */
+        void complete(ByteBuffer response) {
+            responses.add(response);
+            selectorTasks.add(() -> {
+                inFlight--;
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    if ((key.interestOps() & SelectionKey.OP_READ) == 0) {
+                        // чтение было приостановлено: в буфере могут быть уже прочитанные кадры
+                        try {
+                            dispatch();
+                        } catch (IllegalStateException e) {
+                            log.debug("Соединение двоичного протокола закрыто: {}", e.getMessage());
+                            close();
+                        }
+                    }
+                }
+            });
+            selector.wakeup();
+        }
+
+        /**
+         * Ответ из потока Selector
+         */
+        void respond(ByteBuffer response) {
+            responses.add(response);
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        void write() throws IOException {
+            while (true) {
+                int count = 0;
+                for (ByteBuffer response : responses) {
+                    writeBatch[count++] = response;
+                    if (count == WRITE_BATCH_SIZE) {
+                        break;
+                    }
+                }
+                if (count == 0) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+                channel.write(writeBatch, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (writeBatch[i].hasRemaining()) {
+                        // буфер сокета заполнен, продолжим по OP_WRITE
+                        return;
+                    }
+                    responses.poll();
+                    writeBatch[i] = null;
+                }
+            }
+        }
+
+        void close() {
+            closeQuietly(key);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.example.itktest.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Конвертер тела операции над кошельком и кошелька в ответе через {@link WalletOperationCodec}.
+ * <p>
+ * Регистрируется перед конвертером Jackson и обрабатывает только WalletOperationDto и WalletDto,
+ * остальные типы (пакеты, страницы, резервы) по-прежнему читаются и пишутся ObjectMapper.
+ * Прочитанная операция сразу проверяется, поэтому @Valid для нее не нужен.
+ */
+public class WalletJsonHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+    private final WalletOperationCodec codec;
+
+    public WalletJsonHttpMessageConverter(WalletOperationCodec codec) {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.codec = codec;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == WalletOperationDto.class || clazz == WalletDto.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return clazz == WalletOperationDto.class && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return clazz == WalletDto.class && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        WalletOperationDto dto;
+        try {
+            dto = codec.read(inputMessage.getBody());
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+        }
+        WalletOperationCodec.validate(dto);
+        return dto;
+    }
+
+    @Override
+    protected void writeInternal(Object wallet, HttpOutputMessage outputMessage) throws IOException {
+        codec.write((WalletDto) wallet, outputMessage.getBody());
+    }
+}
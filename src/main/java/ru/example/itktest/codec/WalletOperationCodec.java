@@ -0,0 +1,252 @@
+package ru.example.itktest.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Configuration;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.beanvalidation.LocaleContextMessageInterpolator;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.exception.FieldValidationException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.OperationType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Чтение операции над кошельком и запись кошелька в JSON без databind и Bean Validation.
+ * <p>
+ * Тело операции разбирается потоковым API Jackson с буферами, переиспользуемыми фабрикой парсеров;
+ * UUID и тип операции читаются прямо из символов токена без промежуточных строк. Проверки повторяют
+ * аннотации {@link WalletOperationDto} с теми же сообщениями; стандартные сообщения Bean Validation
+ * берутся у валидатора в локали текущего запроса. Кошелек пишется генератором прямо в поток
+ * ответа в том же формате, что и ObjectMapper.
+ */
+@Component
+public class WalletOperationCodec {
+    private static final OperationType[] TYPES = OperationType.values();
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString AMOUNT = new SerializedString("amount");
+    private static final int UUID_LENGTH = 36;
+
+    private final JsonFactory jsonFactory;
+
+    public WalletOperationCodec(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Чтение операции из тела запроса.
+     * Неизвестные поля пропускаются, null равнозначен отсутствию поля, как и при чтении ObjectMapper.
+     * @param in тело запроса
+     * @return операция, еще не проверенная {@link #validate(WalletOperationDto)}
+     * @throws IOException некорректный JSON или значение поля неверного типа
+     */
+    public WalletOperationDto read(InputStream in) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Ожидался JSON-объект");
+            }
+            WalletOperationDto dto = new WalletOperationDto();
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "valletId" -> dto.setId(readUuid(parser, token));
+                    case "operationType" -> dto.setType(readType(parser, token));
+                    case "amount" -> dto.setAmount(readAmount(parser, token));
+                    case "targetWalletId" -> dto.setTargetId(readUuid(parser, token));
+                    default -> parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Ожидалось имя поля");
+            }
+            return dto;
+        }
+    }
+
+    /**
+     * Проверка операции по правилам аннотаций {@link WalletOperationDto}
+     * @param dto операция
+     * @throws FieldValidationException первое нарушение в порядке полей
+     */
+    public static void validate(WalletOperationDto dto) {
+        if (dto.getId() == null) {
+            throw new FieldValidationException("id", WalletOperationDto.ID_REQUIRED);
+        }
+        if (dto.getType() == null) {
+            throw new FieldValidationException("type", WalletOperationDto.TYPE_REQUIRED);
+        }
+        BigDecimal amount = dto.getAmount();
+        if (amount == null) {
+            throw new FieldValidationException("amount", defaultMessage("amount"));
+        }
+        if (amount.signum() < 0) {
+            throw new FieldValidationException("amount", WalletOperationDto.AMOUNT_NEGATIVE);
+        }
+        if (!fitsDigits(amount)) {
+            throw new FieldValidationException("amount", WalletOperationDto.AMOUNT_DIGITS);
+        }
+        if (!dto.isTargetWalletValid()) {
+            throw new FieldValidationException("targetWalletValid", WalletOperationDto.TARGET_INVALID);
+        }
+    }
+
+    /**
+     * Стандартное сообщение Bean Validation для пустого поля без своего сообщения.
+     * Валидатор создается при первом таком нарушении, как и в Spring, сообщение берется в локали текущего запроса.
+     */
+    private static String defaultMessage(String field) {
+        return DefaultValidator.INSTANCE.validateValue(WalletOperationDto.class, field, null)
+                .iterator().next().getMessage();
+    }
+
+    private static final class DefaultValidator {
+        private static final Validator INSTANCE = create();
+
+        private static Validator create() {
+            Configuration<?> configuration = Validation.byDefaultProvider().configure();
+            return configuration
+                    .messageInterpolator(new LocaleContextMessageInterpolator(configuration.getDefaultMessageInterpolator()))
+                    .buildValidatorFactory()
+                    .getValidator();
+        }
+    }
+
+    /**
+     * Запись кошелька в поток ответа
+     * @param wallet кошелек
+     * @param out поток ответа
+     */
+    public void write(WalletDto wallet, OutputStream out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            if (wallet.getId() == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(wallet.getId().toString());
+            }
+            generator.writeFieldName(AMOUNT);
+            generator.writeNumber(wallet.getAmount());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Проверка количества знаков, как у @Digits: дробная часть считается без хвостовых нулей
+     */
+    static boolean fitsDigits(BigDecimal amount) {
+        if (amount.scale() > MinorUnits.SCALE) {
+            amount = amount.stripTrailingZeros();
+        }
+        return amount.scale() <= MinorUnits.SCALE
+                && amount.precision() - amount.scale() <= MinorUnits.MAX_INTEGER_DIGITS;
+    }
+
+    private static UUID readUuid(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING || parser.getTextLength() != UUID_LENGTH) {
+            throw new JsonParseException(parser, "Ожидался UUID");
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        if (chars[offset + 8] != '-' || chars[offset + 13] != '-' || chars[offset + 18] != '-' || chars[offset + 23] != '-') {
+            throw new JsonParseException(parser, "Ожидался UUID");
+        }
+        long mostSigBits = hex(parser, chars, offset, 8) << 32
+                | hex(parser, chars, offset + 9, 4) << 16
+                | hex(parser, chars, offset + 14, 4);
+        long leastSigBits = hex(parser, chars, offset + 19, 4) << 48
+                | hex(parser, chars, offset + 24, 12);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    private static long hex(JsonParser parser, char[] chars, int from, int count) throws JsonParseException {
+        long value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = chars[i];
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else {
+                throw new JsonParseException(parser, "Ожидался UUID");
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private static OperationType readType(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            char[] chars = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+            for (OperationType type : TYPES) {
+                if (matches(type.name(), chars, offset, length)) {
+                    return type;
+                }
+            }
+        }
+        throw new JsonParseException(parser, "Неизвестный тип операции");
+    }
+
+    private static boolean matches(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BigDecimal readAmount(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_STRING:
+                // ObjectMapper по умолчанию приводит строки к числам
+                String text = parser.getText().trim();
+                if (text.isEmpty()) {
+                    return null;
+                }
+                try {
+                    return new BigDecimal(text);
+                } catch (NumberFormatException e) {
+                    throw new JsonParseException(parser, "Ожидалось число");
+                }
+            default:
+                throw new JsonParseException(parser, "Ожидалось число");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.example.itktest.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение одновременных обращений к БД (bulkhead).
+ * <p>
+ * Соединение выдается только при наличии разрешения семафора, разрешение возвращается при закрытии соединения.
+ * Число разрешений равно размеру пула, поэтому лишние запросы ждут на семафоре, а не внутри пула:
+ * ожидание на семафоре не занимает поток ОС при работе на виртуальных потоках. Ожидание ограничено
+ * по времени, а количество ожидающих - сверху; при превышении выбрасывается SQLTransientConnectionException.
+ * Метрики: wallet.bulkhead.wait (время ожидания разрешения), wallet.bulkhead.waiting, wallet.bulkhead.available.
+ */
+public class BulkheadDataSource extends DelegatingDataSource implements MeterBinder {
+    private final Semaphore permits;
+    private final long timeoutNanos;
+    private final int maxWaiting;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile Timer waitTimer;
+
+    /**
+     * @param target пул соединений
+     * @param permits количество одновременно выдаваемых соединений
+     * @param timeout максимальное время ожидания соединения
+     * @param maxWaiting максимальное количество ожидающих запросов
+     */
+    public BulkheadDataSource(DataSource target, int permits, Duration timeout, int maxWaiting) {
+        super(target);
+        this.permits = new Semaphore(permits, true);
+        this.timeoutNanos = timeout.toNanos();
+        this.maxWaiting = maxWaiting;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return release(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return release(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Количество запросов, ожидающих соединения
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("wallet.bulkhead.waiting", waiting, AtomicInteger::get)
+                .description("Запросы, ожидающие соединения с БД")
+                .register(registry);
+        Gauge.builder("wallet.bulkhead.available", permits, Semaphore::availablePermits)
+                .description("Свободные разрешения на соединение с БД")
+                .register(registry);
+        waitTimer = Timer.builder("wallet.bulkhead.wait")
+                .description("Ожидание разрешения на соединение с БД")
+                .register(registry);
+    }
+
+    private void acquire() throws SQLException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            throw new SQLTransientConnectionException("Превышено количество запросов, ожидающих соединения с БД");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("Истекло время ожидания соединения с БД");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения с БД прервано", e);
+        } finally {
+            waiting.decrementAndGet();
+            Timer timer = waitTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Обертка соединения, возвращающая разрешение при закрытии
+     */
+    private Connection release(Connection target) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[] {ConnectionProxy.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (closed.compareAndSet(false, true)) {
+                                try {
+                                    target.close();
+                                } finally {
+                                    permits.release();
+                                }
+                            }
+                            return null;
+                        case "getTargetConnection":
+                            return target;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Bulkhead proxy for " + target;
+                        default:
+                            try {
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            }
+                    }
+                });
+    }
+}
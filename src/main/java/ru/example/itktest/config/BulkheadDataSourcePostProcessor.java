@@ -0,0 +1,49 @@
+package ru.example.itktest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Оборачивание пула соединений в {@link BulkheadDataSource} при wallet.bulkhead.enabled=true
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "wallet.bulkhead.enabled", havingValue = "true")
+public class BulkheadDataSourcePostProcessor implements BeanPostProcessor, EnvironmentAware {
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource dataSource) || bean instanceof BulkheadDataSource) {
+            return bean;
+        }
+
+        int permits = environment.getProperty("wallet.bulkhead.permits", Integer.class, 0);
+        if (permits <= 0 && dataSource instanceof HikariDataSource hikari) {
+            // по размеру пула, чтобы запросы сверх него ждали на семафоре, а не внутри пула
+            permits = hikari.getMaximumPoolSize();
+        }
+        if (permits <= 0) {
+            throw new IllegalStateException("Не задано wallet.bulkhead.permits для пула " + beanName);
+        }
+        Duration timeout = environment.getProperty("wallet.bulkhead.timeout", Duration.class, Duration.ofSeconds(2));
+        int maxWaiting = environment.getProperty("wallet.bulkhead.max-waiting", Integer.class, 10000);
+
+        log.info("Ограничение обращений к БД: {} соединений, ожидание до {}, не больше {} ожидающих",
+                permits, timeout, maxWaiting);
+        return new BulkheadDataSource(dataSource, permits, timeout, maxWaiting);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.example.itktest.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Конфигурация метрик.
+ * <p>
+ * Время запросов JPA-репозиториев записывается автоматически (spring.data.repository.invocations),
+ * JDBC-репозитории помечены @Timed (wallet.repository.invocations). Ожидание соединения из пула -
+ * метрики Hikari (hikaricp.connections.acquire), ожидание на семафоре bulkhead - wallet.bulkhead.wait,
+ * распределение read-only транзакций по репликам - wallet.replicas.reads.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    /**
+     * Метрики ограничения обращений к БД, если оно включено (wallet.bulkhead.enabled)
+     */
+    @Bean
+    public MeterBinder bulkheadMetrics(DataSource dataSource) {
+        return registry -> {
+            BulkheadDataSource bulkhead = unwrap(dataSource, BulkheadDataSource.class);
+            if (bulkhead != null) {
+                bulkhead.bindTo(registry);
+            }
+        };
+    }
+
+    /**
+     * Метрики чтения с реплик, если оно включено (wallet.replicas.enabled)
+     */
+    @Bean
+    public MeterBinder replicaMetrics(DataSource dataSource) {
+        return registry -> {
+            ReplicaRoutingDataSource routing = unwrap(dataSource, ReplicaRoutingDataSource.class);
+            if (routing != null) {
+                routing.bindTo(registry);
+            }
+        };
+    }
+
+    /**
+     * Поиск обертки пула соединений: bulkhead и маршрутизация по репликам могут оборачивать друг друга
+     */
+    private static <T> T unwrap(DataSource dataSource, Class<T> type) {
+        try {
+            return dataSource.isWrapperFor(type) ? dataSource.unwrap(type) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.example.itktest.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import ru.example.itktest.exception.InvalidRequestException;
+
+/**
+ * Чтение собственных записей при чтении с реплик (wallet.replicas.enabled).
+ * <p>
+ * Успешный ответ на изменяющий запрос содержит заголовок {@value #HEADER} - позицию WAL основного сервера
+ * после записи. Клиент передает последнюю полученную позицию в следующих запросах, и read-only транзакции
+ * этих запросов читают с реплики, уже воспроизведшей WAL до этой позиции, либо с основного сервера.
+ */
+@ControllerAdvice
+@Profile("!reactive")
+@ConditionalOnProperty(name = "wallet.replicas.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReplicaLsnAdvice implements HandlerInterceptor, ResponseBodyAdvice<Object> {
+    public static final String HEADER = "Wallet-Lsn";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String lsn = request.getHeader(HEADER);
+        if (lsn != null) {
+            try {
+                ReplicaRoutingDataSource.requireLsn(ReplicaRoutingDataSource.parseLsn(lsn));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidRequestException("Некорректный заголовок " + HEADER + ": " + lsn);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.clearRequiredLsn();
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD) {
+            return body;
+        }
+        if (response instanceof ServletServerHttpResponse servletResponse
+                && servletResponse.getServletResponse().getStatus() >= 400) {
+            return body;
+        }
+        // вне транзакции соединение берется с основного сервера; позиция не меньше позиции фиксации записи
+        response.getHeaders().set(HEADER, jdbcTemplate.queryForObject("SELECT pg_current_wal_lsn()::text", String.class));
+        return body;
+    }
+}
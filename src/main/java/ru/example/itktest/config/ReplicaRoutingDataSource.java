@@ -0,0 +1,266 @@
+package ru.example.itktest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Маршрутизация соединений read-only транзакций на реплики.
+ * <p>
+ * Соединение для транзакции с readOnly = true берется с одной из доступных реплик по кругу, остальные
+ * соединения - с основного сервера. Должен оборачиваться в LazyConnectionDataSourceProxy, иначе JPA
+ * получит соединение до того, как признак read-only транзакции будет выставлен.
+ * <p>
+ * Доступность реплик проверяется периодически: реплика исключается, если она недоступна, вышла из режима
+ * восстановления или отстает от основного сервера больше чем на maxLagBytes байт WAL; при ошибке получения
+ * соединения реплика исключается сразу, а запрос уходит на основной сервер. Для чтения собственных записей
+ * запрос может потребовать позицию WAL ({@link #requireLsn(long)}): тогда подходят только реплики,
+ * воспроизведшие WAL до нее по последней проверке, иначе используется основной сервер. Чтения, результат которых
+ * сохраняется надолго (загрузка кэша), выполняются только на основном сервере ({@link #readFromPrimary(Supplier)}).
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, Closeable {
+    private static final ThreadLocal<Long> REQUIRED_LSN = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagBytes;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthCheck;
+    private volatile Counter primaryReads;
+
+    /**
+     * @param primary основной сервер
+     * @param replicas пулы соединений реплик
+     * @param checkInterval периодичность проверки реплик
+     * @param maxLagBytes максимальное отставание реплики в байтах WAL
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicas,
+                                    Duration checkInterval, long maxLagBytes) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLagBytes = maxLagBytes;
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "wallet-replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthCheck.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Позиция WAL, до которой реплика должна воспроизвести изменения, для текущего потока
+     * @param lsn позиция WAL ({@link #parseLsn(String)})
+     */
+    public static void requireLsn(long lsn) {
+        REQUIRED_LSN.set(lsn);
+    }
+
+    public static void clearRequiredLsn() {
+        REQUIRED_LSN.remove();
+    }
+
+    /**
+     * Выполнение чтения на основном сервере, в том числе в read-only транзакциях.
+     * Такие чтения не учитываются в wallet.replicas.reads.
+     * @param read чтение, получающее соединение в текущем потоке
+     * @return результат чтения
+     */
+    public static <T> T readFromPrimary(Supplier<T> read) {
+        if (PRIMARY_REQUIRED.get() != null) {
+            return read.get();
+        }
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    /**
+     * Перевод позиции WAL из текстового вида Postgres (16/B374D848) в число
+     * @throws IllegalArgumentException некорректная позиция
+     */
+    public static long parseLsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        if (slash <= 0 || slash == lsn.length() - 1) {
+            throw new IllegalArgumentException("Некорректная позиция WAL: " + lsn);
+        }
+        long high = Long.parseUnsignedLong(lsn.substring(0, slash), 16);
+        long low = Long.parseUnsignedLong(lsn.substring(slash + 1), 16);
+        if (high > 0xFFFFFFFFL || low > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Некорректная позиция WAL: " + lsn);
+        }
+        return high << 32 | low;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || PRIMARY_REQUIRED.get() != null) {
+            return primary.getConnection();
+        }
+        Replica replica = pick(REQUIRED_LSN.get());
+        if (replica != null) {
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                if (replica.reads != null) {
+                    replica.reads.increment();
+                }
+                return connection;
+            } catch (SQLException e) {
+                replica.markDown(e.getMessage());
+            }
+        }
+        if (primaryReads != null) {
+            primaryReads.increment();
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Соединения выдаются только с учетными данными пулов");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        primaryReads = Counter.builder("wallet.replicas.reads")
+                .description("Read-only транзакции по серверам")
+                .tag("target", "primary")
+                .register(registry);
+        for (Replica replica : replicas) {
+            replica.reads = Counter.builder("wallet.replicas.reads")
+                    .description("Read-only транзакции по серверам")
+                    .tag("target", replica.dataSource.getPoolName())
+                    .register(registry);
+            Gauge.builder("wallet.replicas.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .description("Доступность реплики")
+                    .tag("replica", replica.dataSource.getPoolName())
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        healthCheck.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    /**
+     * Выбор доступной реплики по кругу
+     * @param requiredLsn позиция WAL, либо null
+     * @return реплика, либо null, если подходящих нет
+     */
+    private Replica pick(Long requiredLsn) {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy && (requiredLsn == null || Long.compareUnsigned(replica.replayLsn, requiredLsn) >= 0)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        long primaryLsn;
+        try {
+            primaryLsn = queryLsn(primary, "SELECT pg_current_wal_lsn()::text");
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Не удалось получить позицию WAL основного сервера: {}", e.getMessage());
+            return;
+        }
+        for (Replica replica : replicas) {
+            try {
+                long replayLsn = queryLsn(replica.dataSource,
+                        "SELECT CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn()::text END");
+                long lag = primaryLsn - replayLsn;
+                replica.replayLsn = replayLsn;
+                if (lag > maxLagBytes) {
+                    replica.markDown("отставание " + lag + " байт WAL");
+                } else {
+                    replica.markUp();
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markDown(e.getMessage());
+            }
+        }
+    }
+
+    private static long queryLsn(DataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            String lsn = rs.getString(1);
+            if (lsn == null) {
+                throw new IllegalStateException("сервер не является репликой");
+            }
+            return parseLsn(lsn);
+        }
+    }
+
+    /**
+     * Реплика и результат ее последней проверки
+     */
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy;
+        private volatile long replayLsn;
+        private volatile Counter reads;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                log.info("Реплика {} доступна для чтения", dataSource.getPoolName());
+            }
+            healthy = true;
+        }
+
+        void markDown(String reason) {
+            if (healthy) {
+                log.warn("Реплика {} исключена из чтения: {}", dataSource.getPoolName(), reason);
+            }
+            healthy = false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.example.itktest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Маршрутизация read-only транзакций на реплики ({@link ReplicaRoutingDataSource}) при wallet.replicas.enabled=true.
+ * <p>
+ * Пул соединений основного сервера оборачивается в LazyConnectionDataSourceProxy поверх маршрутизации:
+ * соединение выбирается при первом запросе транзакции, когда признак read-only уже известен.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "wallet.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingDataSourcePostProcessor implements BeanPostProcessor, EnvironmentAware, DisposableBean {
+    private Environment environment;
+    private final List<ReplicaRoutingDataSource> routingDataSources = new ArrayList<>();
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource dataSource) || bean instanceof LazyConnectionDataSourceProxy) {
+            return bean;
+        }
+        if (environment.getProperty("wallet.journal.enabled", Boolean.class, false)) {
+            // баланс в режиме журнала отложенной записи сверяется с номером примененной записи на основном сервере
+            log.warn("wallet.replicas.enabled игнорируется при wallet.journal.enabled=true, чтение идет с основного сервера");
+            return bean;
+        }
+
+        String[] urls = environment.getProperty("wallet.replicas.urls", String[].class, new String[0]);
+        if (urls.length == 0) {
+            throw new IllegalStateException("Не задано wallet.replicas.urls для пула " + beanName);
+        }
+        List<HikariDataSource> replicas = new ArrayList<>(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            replicas.add(createReplica(urls[i].trim(), "wallet-replica-" + (i + 1)));
+        }
+        Duration checkInterval = environment.getProperty("wallet.replicas.health-check-interval", Duration.class,
+                Duration.ofSeconds(2));
+        long maxLagBytes = environment.getProperty("wallet.replicas.max-lag-bytes", Long.class, 16L * 1024 * 1024);
+
+        log.info("Чтение в read-only транзакциях с реплик: {}, проверка каждые {}, допустимое отставание {} байт WAL",
+                replicas.size(), checkInterval, maxLagBytes);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(dataSource, replicas, checkInterval, maxLagBytes);
+        routingDataSources.add(routing);
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Override
+    public void destroy() {
+        routingDataSources.forEach(ReplicaRoutingDataSource::close);
+    }
+
+    /**
+     * Пул соединений реплики; учетные данные по умолчанию - как у основного сервера
+     */
+    private HikariDataSource createReplica(String url, String poolName) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName(poolName);
+        replica.setJdbcUrl(url);
+        replica.setUsername(environment.getProperty("wallet.replicas.username",
+                environment.getProperty("spring.datasource.username")));
+        replica.setPassword(environment.getProperty("wallet.replicas.password",
+                environment.getProperty("spring.datasource.password")));
+        replica.setMaximumPoolSize(environment.getProperty("wallet.replicas.pool-size", Integer.class, 10));
+        // недоступная реплика не должна надолго задерживать запрос перед переходом на основной сервер
+        replica.setConnectionTimeout(environment.getProperty("wallet.replicas.connection-timeout", Duration.class,
+                Duration.ofSeconds(1)).toMillis());
+        replica.setInitializationFailTimeout(-1);
+        replica.setReadOnly(true);
+        return replica;
+    }
+}
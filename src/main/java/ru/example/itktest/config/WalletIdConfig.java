@@ -0,0 +1,22 @@
+package ru.example.itktest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.example.itktest.model.WalletIdGenerator;
+import ru.example.itktest.model.WalletIdStrategy;
+
+/**
+ * Способ генерации ID новых кошельков для JPA ({@link WalletIdGenerator}).
+ * JDBC- и R2DBC-репозитории получают его через @Value("${wallet.id.strategy}").
+ */
+@Configuration
+public class WalletIdConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer walletIdStrategyCustomizer(
+            @Value("${wallet.id.strategy:TIME_ORDERED}") WalletIdStrategy strategy) {
+        return properties -> properties.put(WalletIdGenerator.STRATEGY_SETTING, strategy);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.example.itktest.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.example.itktest.codec.WalletJsonHttpMessageConverter;
+import ru.example.itktest.codec.WalletOperationCodec;
+
+import java.util.List;
+
+/**
+ * Конфигурация Spring MVC: потоковый JSON для операций над кошельком,
+ * заголовок позиции WAL при чтении с реплик
+ */
+@Configuration
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class WebMvcConfig implements WebMvcConfigurer {
+    private final WalletOperationCodec walletOperationCodec;
+    private final ObjectProvider<ReplicaLsnAdvice> replicaLsnAdvice;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // раньше конвертера Jackson, иначе до WalletOperationDto и WalletDto очередь не дойдет
+        converters.add(0, new WalletJsonHttpMessageConverter(walletOperationCodec));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        replicaLsnAdvice.ifAvailable(registry::addInterceptor);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.example.itktest.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.example.itktest.dto.HotWalletDto;
+import ru.example.itktest.service.HotWalletTracker;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint самых часто используемых кошельков: GET /actuator/hotwallets?limit=N, DELETE - сброс счетчиков.
+ * limit должен быть положительным, значения больше количества счетчиков ограничиваются им.
+ * ID кошельков не выносятся в теги метрик, чтобы не раздувать количество временных рядов.
+ */
+@Component
+@Endpoint(id = "hotwallets")
+@RequiredArgsConstructor
+public class HotWalletsEndpoint {
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final HotWalletTracker hotWalletTracker;
+
+    @ReadOperation
+    public List<HotWalletDto> hotWallets(@Nullable Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new InvalidEndpointRequestException("limit должен быть положительным: " + limit, "Invalid limit");
+        }
+        return hotWalletTracker.top(limit == null ? DEFAULT_LIMIT : limit);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        hotWalletTracker.reset();
+    }
+}
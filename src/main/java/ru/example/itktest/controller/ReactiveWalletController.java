@@ -0,0 +1,225 @@
+package ru.example.itktest.controller;
+
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.example.itktest.dto.WalletBalanceDto;
+import ru.example.itktest.dto.WalletBatchResultDto;
+import ru.example.itktest.dto.WalletBulkCreateDto;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletHoldDto;
+import ru.example.itktest.dto.WalletHoldRequestDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.dto.WalletOperationPageDto;
+import ru.example.itktest.dto.WalletPageDto;
+import ru.example.itktest.model.BatchMode;
+import ru.example.itktest.service.ReactiveWalletService;
+import ru.example.itktest.service.WalletBalanceSubscriptions;
+import ru.example.itktest.service.WalletBatchService;
+import ru.example.itktest.service.WalletBulkService;
+import ru.example.itktest.service.WalletHistoryService;
+import ru.example.itktest.service.WalletHoldService;
+import ru.example.itktest.service.WalletStripeService;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Неблокирующий контроллер для управления электронными кошельками (профиль reactive).
+ * Контракт совпадает с {@link WalletController}.
+ * Пакетные операции, массовое создание и разбиение баланса проводятся существующими блокирующими сервисами
+ * вне потоков обработки запросов.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/v1/wallet")
+@RequiredArgsConstructor
+public class ReactiveWalletController {
+    private final ReactiveWalletService walletService;
+    private final WalletBatchService walletBatchService;
+    private final WalletStripeService walletStripeService;
+    private final WalletHoldService walletHoldService;
+    private final WalletBulkService walletBulkService;
+    private final WalletBalanceSubscriptions walletBalanceSubscriptions;
+    private final WalletHistoryService walletHistoryService;
+
+    /**
+     * Создание нового электронного кошелька.
+     * @return созданный кошелек с присвоенным идентификатором
+     */
+    @PostMapping("/create")
+    public Mono<ResponseEntity<WalletDto>> createWallet() {
+        return walletService.createWallet()
+                .map(wallet -> new ResponseEntity<>(wallet, HttpStatus.CREATED));
+    }
+
+    /**
+     * Массовое создание электронных кошельков.
+     * Части создаются по очереди блокирующим сервисом вне потоков обработки запросов,
+     * следующая - после того, как клиент начал получать предыдущую.
+     * @param bulkCreateDto количество и необязательные начальные балансы кошельков
+     * @return поток созданных кошельков, по одному JSON-объекту на строку
+     */
+    @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Flux<WalletDto> createWallets(@Valid @RequestBody WalletBulkCreateDto bulkCreateDto) {
+        walletBulkService.validate(bulkCreateDto);
+        return Flux.range(0, walletBulkService.chunkCount(bulkCreateDto))
+                .concatMap(chunk -> Mono.fromCallable(() -> walletBulkService.createChunk(bulkCreateDto, chunk))
+                        .subscribeOn(Schedulers.boundedElastic()), 1)
+                .flatMapIterable(wallets -> wallets);
+    }
+
+    /**
+     * Проведение операции над кошельком.
+     * @param walletOperationDto данные для проведения операции, содержащие тип операции и сумму денежных средств
+     * @param idempotencyKey необязательный ключ идемпотентности; повтор с тем же ключом возвращает сохраненный результат
+     * @return обновленный электронный кошелек
+     */
+    @PostMapping
+    public Mono<WalletDto> walletOperation(@Valid @RequestBody WalletOperationDto walletOperationDto,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return walletService.walletOperation(walletOperationDto, idempotencyKey);
+    }
+
+    /**
+     * Проведение пакета операций над кошельками.
+     * @param operations операции в порядке проведения
+     * @param mode режим проведения пакета
+     * @return результат каждой операции; 409, если пакет в режиме ALL_OR_NOTHING откачен
+     */
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<WalletBatchResultDto>> batchOperation(@RequestBody List<WalletOperationDto> operations,
+                                                                     @RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode) {
+        return Mono.fromCallable(() -> walletBatchService.execute(operations, mode))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(result -> new ResponseEntity<>(result,
+                        result.isCommitted() || mode == BatchMode.BEST_EFFORT ? HttpStatus.OK : HttpStatus.CONFLICT));
+    }
+
+    /**
+     * Разбиение баланса электронного кошелька на части для частых пополнений.
+     * @param WALLET_UUID кошелька
+     * @param count количество частей; 1 - убрать разбиение
+     * @return электронный кошелек с текущим балансом
+     */
+    @PostMapping("/{WALLET_UUID}/stripes")
+    public Mono<WalletDto> restripe(@PathVariable UUID WALLET_UUID, @RequestParam int count) {
+        return Mono.fromCallable(() -> walletStripeService.restripe(WALLET_UUID, count))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Резервирование средств электронного кошелька.
+     * @param WALLET_UUID кошелька
+     * @param holdRequestDto сумма и необязательное время жизни резерва в секундах
+     * @return созданный резерв
+     */
+    @PostMapping("/{WALLET_UUID}/holds")
+    public Mono<ResponseEntity<WalletHoldDto>> hold(@PathVariable UUID WALLET_UUID,
+                                                    @Valid @RequestBody WalletHoldRequestDto holdRequestDto) {
+        return Mono.fromCallable(() -> walletHoldService.hold(WALLET_UUID, holdRequestDto))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(hold -> new ResponseEntity<>(hold, HttpStatus.CREATED));
+    }
+
+    /**
+     * Получение резерва
+     * @param HOLD_UUID резерва
+     * @return резерв
+     */
+    @GetMapping("/holds/{HOLD_UUID}")
+    public Mono<WalletHoldDto> getHold(@PathVariable UUID HOLD_UUID) {
+        return Mono.fromCallable(() -> walletHoldService.getHold(HOLD_UUID))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Подтверждение резерва
+     * @param HOLD_UUID резерва
+     * @return подтвержденный резерв; 409, если резерв уже отменен или истек
+     */
+    @PostMapping("/holds/{HOLD_UUID}/capture")
+    public Mono<WalletHoldDto> capture(@PathVariable UUID HOLD_UUID) {
+        return Mono.fromCallable(() -> walletHoldService.capture(HOLD_UUID))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Отмена резерва
+     * @param HOLD_UUID резерва
+     * @return отмененный резерв; 409, если резерв уже подтвержден
+     */
+    @PostMapping("/holds/{HOLD_UUID}/release")
+    public Mono<WalletHoldDto> release(@PathVariable UUID HOLD_UUID) {
+        return Mono.fromCallable(() -> walletHoldService.release(HOLD_UUID))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Получение баланса электронного кошелька
+     * @param WALLET_UUID кошелька
+     * @return баланс электронного кошелька
+     */
+    @GetMapping("/{WALLET_UUID}")
+    public Mono<WalletBalanceDto> getBalance(@PathVariable UUID WALLET_UUID) {
+        return walletService.getBalance(WALLET_UUID);
+    }
+
+    /**
+     * Постраничное получение истории операций электронного кошелька, от новых операций к старым
+     * @param WALLET_UUID кошелька
+     * @param cursor курсор следующей страницы из предыдущего ответа
+     * @param limit размер страницы
+     * @return страница операций
+     */
+    @GetMapping("/{WALLET_UUID}/operations")
+    public Mono<WalletOperationPageDto> getOperations(@PathVariable UUID WALLET_UUID,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit) {
+        return Mono.fromCallable(() -> walletHistoryService.getPage(WALLET_UUID, cursor, limit))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Подписка на изменения баланса электронного кошелька (server-sent events).
+     * Первое событие - текущий баланс, затем новый баланс после каждого изменения;
+     * промежуточные балансы медленному клиенту не отправляются.
+     * @param WALLET_UUID кошелька
+     * @return поток событий balance с балансом электронного кошелька
+     */
+    @GetMapping(value = "/{WALLET_UUID}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<WalletBalanceDto>> subscribe(@PathVariable UUID WALLET_UUID) {
+        return walletService.getBalance(WALLET_UUID)
+                .thenMany(Flux.defer(() -> walletBalanceSubscriptions.subscribe(WALLET_UUID)));
+    }
+
+    /**
+     * Постраничное получение электронных кошельков
+     * @param cursor курсор следующей страницы из предыдущего ответа
+     * @param limit размер страницы
+     * @return страница электронных кошельков
+     */
+    @GetMapping()
+    public Mono<WalletPageDto> getAll(@RequestParam(required = false) String cursor,
+                                      @RequestParam(required = false) Integer limit) {
+        return walletService.getPage(cursor, limit);
+    }
+
+    /**
+     * Потоковая выгрузка всех электронных кошельков в формате NDJSON
+     * @return поток кошельков, по одному JSON-объекту на строку
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<WalletDto> streamAll() {
+        return walletService.streamAll();
+    }
+}
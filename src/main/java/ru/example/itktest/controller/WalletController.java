@@ -2,13 +2,31 @@ package ru.example.itktest.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 import ru.example.itktest.dto.WalletBalanceDto;
+import ru.example.itktest.dto.WalletBatchResultDto;
+import ru.example.itktest.dto.WalletBulkCreateDto;
 import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletHoldDto;
+import ru.example.itktest.dto.WalletHoldRequestDto;
 import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.dto.WalletOperationPageDto;
+import ru.example.itktest.dto.WalletPageDto;
+import ru.example.itktest.model.BatchMode;
+import ru.example.itktest.service.WalletBalanceSubscriptions;
+import ru.example.itktest.service.WalletBatchService;
+import ru.example.itktest.service.WalletBulkService;
+import ru.example.itktest.service.WalletHistoryService;
+import ru.example.itktest.service.WalletHoldService;
 import ru.example.itktest.service.WalletService;
+import ru.example.itktest.service.WalletStripeService;
 
 import java.util.List;
 import java.util.UUID;
@@ -17,10 +35,17 @@ import java.util.UUID;
  * Контроллер для управления электронными кошельками.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/wallet")
 @RequiredArgsConstructor
 public class WalletController {
     private final WalletService walletService;
+    private final WalletBatchService walletBatchService;
+    private final WalletStripeService walletStripeService;
+    private final WalletHoldService walletHoldService;
+    private final WalletBulkService walletBulkService;
+    private final WalletBalanceSubscriptions walletBalanceSubscriptions;
+    private final WalletHistoryService walletHistoryService;
 
     /**
      * Создание нового электронного кошелька.
@@ -32,17 +57,103 @@ public class WalletController {
         return new ResponseEntity<>(createdWallet, HttpStatus.CREATED);
     }
 
+    /**
+     * Массовое создание электронных кошельков.
+     * Кошельки создаются частями, и созданные отдаются по мере фиксации частей.
+     * @param bulkCreateDto количество и необязательные начальные балансы кошельков
+     * @return поток созданных кошельков, по одному JSON-объекту на строку
+     */
+    @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> createWallets(@Valid @RequestBody WalletBulkCreateDto bulkCreateDto) {
+        walletBulkService.validate(bulkCreateDto);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> walletBulkService.create(bulkCreateDto, out));
+    }
+
     /**
      * Проведение операции над заявкой.
+     * Тело читается и проверяется WalletJsonHttpMessageConverter без databind и Bean Validation.
      * @param walletOperationDto данные для проведения операции, содержащие тип операции и сумму денежных средств
+     * @param idempotencyKey необязательный ключ идемпотентности; повтор с тем же ключом возвращает сохраненный результат
      * @return обновленный электронный кошелек
      */
     @PostMapping
-    public ResponseEntity<WalletDto> walletOperation(@Valid @RequestBody WalletOperationDto walletOperationDto) {
-        WalletDto updatedWallet = walletService.walletOperation(walletOperationDto);
+    public ResponseEntity<WalletDto> walletOperation(@RequestBody WalletOperationDto walletOperationDto,
+                                                     @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        WalletDto updatedWallet = walletService.walletOperation(walletOperationDto, idempotencyKey);
         return ResponseEntity.ok(updatedWallet);
     }
 
+    /**
+     * Проведение пакета операций над кошельками.
+     * @param operations операции в порядке проведения
+     * @param mode режим проведения пакета
+     * @return результат каждой операции; 409, если пакет в режиме ALL_OR_NOTHING откачен
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<WalletBatchResultDto> batchOperation(@RequestBody List<WalletOperationDto> operations,
+                                                               @RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode) {
+        WalletBatchResultDto result = walletBatchService.execute(operations, mode);
+        HttpStatus status = result.isCommitted() || mode == BatchMode.BEST_EFFORT ? HttpStatus.OK : HttpStatus.CONFLICT;
+        return new ResponseEntity<>(result, status);
+    }
+
+    /**
+     * Разбиение баланса электронного кошелька на части для частых пополнений.
+     * Операции над кошельком во время разбиения не прерываются.
+     * @param WALLET_UUID кошелька
+     * @param count количество частей; 1 - убрать разбиение
+     * @return электронный кошелек с текущим балансом
+     */
+    @PostMapping("/{WALLET_UUID}/stripes")
+    public ResponseEntity<WalletDto> restripe(@PathVariable UUID WALLET_UUID, @RequestParam int count) {
+        return ResponseEntity.ok(walletStripeService.restripe(WALLET_UUID, count));
+    }
+
+    /**
+     * Резервирование средств электронного кошелька.
+     * Зарезервированная сумма исключается из доступного баланса до подтверждения или отмены резерва.
+     * @param WALLET_UUID кошелька
+     * @param holdRequestDto сумма и необязательное время жизни резерва в секундах
+     * @return созданный резерв
+     */
+    @PostMapping("/{WALLET_UUID}/holds")
+    public ResponseEntity<WalletHoldDto> hold(@PathVariable UUID WALLET_UUID,
+                                              @Valid @RequestBody WalletHoldRequestDto holdRequestDto) {
+        return new ResponseEntity<>(walletHoldService.hold(WALLET_UUID, holdRequestDto), HttpStatus.CREATED);
+    }
+
+    /**
+     * Получение резерва
+     * @param HOLD_UUID резерва
+     * @return резерв
+     */
+    @GetMapping("/holds/{HOLD_UUID}")
+    public ResponseEntity<WalletHoldDto> getHold(@PathVariable UUID HOLD_UUID) {
+        return ResponseEntity.ok(walletHoldService.getHold(HOLD_UUID));
+    }
+
+    /**
+     * Подтверждение резерва: зарезервированная сумма списывается окончательно
+     * @param HOLD_UUID резерва
+     * @return подтвержденный резерв; 409, если резерв уже отменен или истек
+     */
+    @PostMapping("/holds/{HOLD_UUID}/capture")
+    public ResponseEntity<WalletHoldDto> capture(@PathVariable UUID HOLD_UUID) {
+        return ResponseEntity.ok(walletHoldService.capture(HOLD_UUID));
+    }
+
+    /**
+     * Отмена резерва: зарезервированная сумма возвращается в доступный баланс
+     * @param HOLD_UUID резерва
+     * @return отмененный резерв; 409, если резерв уже подтвержден
+     */
+    @PostMapping("/holds/{HOLD_UUID}/release")
+    public ResponseEntity<WalletHoldDto> release(@PathVariable UUID HOLD_UUID) {
+        return ResponseEntity.ok(walletHoldService.release(HOLD_UUID));
+    }
+
     /**
      * Получение баланса электронного кошелька
      * @param WALLET_UUID кошелька
@@ -54,11 +165,52 @@ public class WalletController {
     }
 
     /**
-     * Получение баланса электронного кошелька
-     * @return баланс электронного кошелька
+     * Постраничное получение истории операций электронного кошелька, от новых операций к старым
+     * @param WALLET_UUID кошелька
+     * @param cursor курсор следующей страницы из предыдущего ответа
+     * @param limit размер страницы
+     * @return страница операций
+     */
+    @GetMapping("/{WALLET_UUID}/operations")
+    public ResponseEntity<WalletOperationPageDto> getOperations(@PathVariable UUID WALLET_UUID,
+                                                                @RequestParam(required = false) String cursor,
+                                                                @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(walletHistoryService.getPage(WALLET_UUID, cursor, limit));
+    }
+
+    /**
+     * Подписка на изменения баланса электронного кошелька (server-sent events).
+     * Первое событие - текущий баланс, затем новый баланс после каждого изменения;
+     * промежуточные балансы медленному клиенту не отправляются.
+     * @param WALLET_UUID кошелька
+     * @return поток событий balance с балансом электронного кошелька
+     */
+    @GetMapping(value = "/{WALLET_UUID}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<WalletBalanceDto>> subscribe(@PathVariable UUID WALLET_UUID) {
+        walletService.getBalance(WALLET_UUID);
+        return walletBalanceSubscriptions.subscribe(WALLET_UUID);
+    }
+
+    /**
+     * Постраничное получение электронных кошельков
+     * @param cursor курсор следующей страницы из предыдущего ответа
+     * @param limit размер страницы
+     * @return страница электронных кошельков
      */
     @GetMapping()
-    public ResponseEntity<List<WalletDto>> getAll() {
-        return ResponseEntity.ok(walletService.getAll());
+    public ResponseEntity<WalletPageDto> getAll(@RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(walletService.getPage(cursor, limit));
+    }
+
+    /**
+     * Потоковая выгрузка всех электронных кошельков в формате NDJSON
+     * @return поток кошельков, по одному JSON-объекту на строку
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(walletService::streamAll);
     }
 }
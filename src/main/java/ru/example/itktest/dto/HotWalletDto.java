@@ -0,0 +1,12 @@
+package ru.example.itktest.dto;
+
+import java.util.UUID;
+
+/**
+ * Часто используемый кошелек по оценке {@link ru.example.itktest.service.HotWalletTracker}
+ * @param walletId ID кошелька
+ * @param count оценка количества операций сверху
+ * @param error максимальное завышение оценки: точное количество не меньше count - error
+ */
+public record HotWalletDto(UUID walletId, long count, long error) {
+}
@@ -0,0 +1,38 @@
+package ru.example.itktest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.example.itktest.model.BatchItemStatus;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * DTO результата одной операции из пакета
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WalletBatchItemResultDto {
+    /**
+     * Позиция операции в пакете
+     */
+    private int index;
+
+    private UUID walletId;
+
+    private BatchItemStatus status;
+
+    /**
+     * Баланс после операции (для APPLIED), либо текущий баланс (для INSUFFICIENT_FUNDS)
+     */
+    private BigDecimal amount;
+
+    /**
+     * Описание ошибки
+     */
+    private String message;
+}
@@ -0,0 +1,25 @@
+package ru.example.itktest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO результата пакета операций
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletBatchResultDto {
+    /**
+     * Все проведенные операции зафиксированы
+     */
+    private boolean committed;
+
+    /**
+     * Результаты в порядке операций в пакете
+     */
+    private List<WalletBatchItemResultDto> results;
+}
@@ -0,0 +1,43 @@
+package ru.example.itktest.dto;
+
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.example.itktest.model.MinorUnits;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * DTO массового создания кошельков
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletBulkCreateDto {
+    /**
+     * Количество создаваемых кошельков
+     */
+    @NotNull(message = "Количество кошельков обязательно")
+    @Positive(message = "Количество кошельков должно быть положительным")
+    private Integer count;
+
+    /**
+     * Начальный баланс каждого кошелька, по умолчанию 0
+     */
+    @PositiveOrZero(message = WalletOperationDto.AMOUNT_NEGATIVE)
+    @Digits(integer = MinorUnits.MAX_INTEGER_DIGITS, fraction = MinorUnits.SCALE,
+            message = WalletOperationDto.AMOUNT_DIGITS)
+    private BigDecimal amount;
+
+    /**
+     * Начальные балансы кошельков по порядку, вместо amount; количество должно совпадать с count
+     */
+    private List<@NotNull @PositiveOrZero(message = WalletOperationDto.AMOUNT_NEGATIVE)
+            @Digits(integer = MinorUnits.MAX_INTEGER_DIGITS, fraction = MinorUnits.SCALE,
+                    message = WalletOperationDto.AMOUNT_DIGITS) BigDecimal> amounts;
+}
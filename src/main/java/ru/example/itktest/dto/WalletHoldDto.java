@@ -0,0 +1,18 @@
+package ru.example.itktest.dto;
+
+import ru.example.itktest.model.HoldStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Резерв средств кошелька
+ * @param id резерва
+ * @param walletId кошелек
+ * @param amount зарезервированная сумма
+ * @param status состояние резерва
+ * @param expiresAt время, после которого неподтвержденный резерв отменяется
+ */
+public record WalletHoldDto(UUID id, UUID walletId, BigDecimal amount, HoldStatus status, LocalDateTime expiresAt) {
+}
@@ -0,0 +1,32 @@
+package ru.example.itktest.dto;
+
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.example.itktest.model.MinorUnits;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO резервирования средств кошелька
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletHoldRequestDto {
+    @NotNull
+    @Positive(message = "Сумма резерва должна быть положительной")
+    @Digits(integer = MinorUnits.MAX_INTEGER_DIGITS, fraction = MinorUnits.SCALE,
+            message = "Сумма должна содержать не больше 15 знаков до запятой и 2 после")
+    private BigDecimal amount;
+
+    /**
+     * Время жизни резерва в секундах, по истечении которого неподтвержденный резерв отменяется.
+     * Если не задано - wallet.holds.default-ttl
+     */
+    @Positive(message = "Время жизни резерва должно быть положительным")
+    private Long ttlSeconds;
+}
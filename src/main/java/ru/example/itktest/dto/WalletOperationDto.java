@@ -1,12 +1,16 @@
 package ru.example.itktest.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.example.itktest.model.MinorUnits;
 import ru.example.itktest.model.OperationType;
 
 import java.math.BigDecimal;
@@ -20,15 +24,42 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 public class WalletOperationDto {
+    // сообщения валидации, общие для Bean Validation и WalletOperationCodec
+    public static final String ID_REQUIRED = "ID кошелька обязательно";
+    public static final String TYPE_REQUIRED = "Статус обязателен";
+    public static final String AMOUNT_NEGATIVE = "Сумма не может быть отрицательной";
+    public static final String AMOUNT_DIGITS = "Сумма должна содержать не больше 15 знаков до запятой и 2 после";
+    public static final String TARGET_INVALID = "Для перевода нужен кошелек получателя, отличный от кошелька отправителя";
+
     @JsonProperty("valletId") // имя поля в JSON
-    @NotNull(message = "ID кошелька обязательно")
+    @NotNull(message = ID_REQUIRED)
     private UUID id;
 
     @JsonProperty("operationType")
-    @NotNull(message = "Статус обязателен")
+    @NotNull(message = TYPE_REQUIRED)
     private OperationType type;
 
-    @NotNull
-    @PositiveOrZero(message = "Сумма не может быть отрицательной")
+    @NotNull // стандартное сообщение Bean Validation
+    @PositiveOrZero(message = AMOUNT_NEGATIVE)
+    @Digits(integer = MinorUnits.MAX_INTEGER_DIGITS, fraction = MinorUnits.SCALE, message = AMOUNT_DIGITS)
     private BigDecimal amount;
+
+    /**
+     * Кошелек получателя, только для TRANSFER
+     */
+    @JsonProperty("targetWalletId")
+    private UUID targetId;
+
+    public WalletOperationDto(UUID id, OperationType type, BigDecimal amount) {
+        this(id, type, amount, null);
+    }
+
+    /**
+     * Для перевода обязателен кошелек получателя, отличный от кошелька отправителя
+     */
+    @JsonIgnore
+    @AssertTrue(message = TARGET_INVALID)
+    public boolean isTargetWalletValid() {
+        return type != OperationType.TRANSFER || (targetId != null && !targetId.equals(id));
+    }
 }
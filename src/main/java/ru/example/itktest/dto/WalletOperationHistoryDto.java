@@ -0,0 +1,20 @@
+package ru.example.itktest.dto;
+
+import ru.example.itktest.model.OperationType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Проведенная операция над кошельком
+ * @param id операции
+ * @param type тип операции
+ * @param amount изменение баланса: положительное при зачислении, отрицательное при списании
+ * @param balance баланс после операции, либо null, если он не был известен при записи
+ * @param counterpartyId второй кошелек перевода, либо null
+ * @param createdAt время проведения
+ */
+public record WalletOperationHistoryDto(long id, OperationType type, BigDecimal amount, BigDecimal balance,
+                                        UUID counterpartyId, LocalDateTime createdAt) {
+}
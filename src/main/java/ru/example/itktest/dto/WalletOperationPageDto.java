@@ -0,0 +1,25 @@
+package ru.example.itktest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO страницы истории операций кошелька
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletOperationPageDto {
+    /**
+     * Операции текущей страницы, от новых к старым
+     */
+    private List<WalletOperationHistoryDto> items;
+
+    /**
+     * Непрозрачный курсор следующей страницы, null если страница последняя
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,25 @@
+package ru.example.itktest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO страницы кошельков при постраничном получении
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletPageDto {
+    /**
+     * Кошельки текущей страницы в порядке возрастания ID
+     */
+    private List<WalletDto> items;
+
+    /**
+     * Непрозрачный курсор следующей страницы, null если страница последняя
+     */
+    private String nextCursor;
+}
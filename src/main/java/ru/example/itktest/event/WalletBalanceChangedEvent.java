@@ -0,0 +1,28 @@
+package ru.example.itktest.event;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Событие изменения баланса кошелька
+ * @param walletId идентификатор кошелька
+ * @param amount новый баланс в копейках, либо null, если он неизвестен (операции в режиме журнала)
+ * @param updatedAt время изменения (для событий с других узлов может отсутствовать)
+ * @param remote событие получено с другого узла через LISTEN/NOTIFY
+ */
+public record WalletBalanceChangedEvent(UUID walletId, Long amount, LocalDateTime updatedAt, boolean remote) {
+
+    /**
+     * Событие об изменении, проведенном на текущем узле
+     */
+    public static WalletBalanceChangedEvent local(UUID walletId, long amount, LocalDateTime updatedAt) {
+        return new WalletBalanceChangedEvent(walletId, amount, updatedAt, false);
+    }
+
+    /**
+     * Событие об изменении, проведенном на текущем узле, без нового баланса
+     */
+    public static WalletBalanceChangedEvent local(UUID walletId) {
+        return new WalletBalanceChangedEvent(walletId, null, null, false);
+    }
+}
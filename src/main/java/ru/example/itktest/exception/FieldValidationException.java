@@ -0,0 +1,11 @@
+package ru.example.itktest.exception;
+
+/**
+ * Ошибка валидации поля тела запроса, найденная без Bean Validation.
+ * Сообщение совпадает с сообщением MethodArgumentNotValidException: "поле: описание".
+ */
+public class FieldValidationException extends RuntimeException {
+    public FieldValidationException(String field, String message) {
+        super(field + ": " + message);
+    }
+}
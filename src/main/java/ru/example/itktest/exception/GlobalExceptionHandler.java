@@ -3,10 +3,14 @@ package ru.example.itktest.exception;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebInputException;
 
 /**
  * Обработка исключений
@@ -18,7 +22,7 @@ public class GlobalExceptionHandler {
     @ResponseStatus(HttpStatus.NOT_FOUND)
     @ExceptionHandler(WalletNotFoundException.class)
     public ErrorResponse handleWalletNotFound(WalletNotFoundException exception) {
-        log.error("Wallet Not Found: {}", exception.getMessage());
+        log.debug("Wallet Not Found: {}", exception.getMessage());
         return new ErrorResponse(exception.getMessage());
     }
 
@@ -26,7 +30,55 @@ public class GlobalExceptionHandler {
     @ResponseStatus(HttpStatus.CONFLICT)
     @ExceptionHandler(InsufficientFundsException.class)
     public ErrorResponse handleInsufficientFundsException(InsufficientFundsException exception) {
-        log.error("Insufficient Funds: {}", exception.getMessage());
+        log.debug("Insufficient Funds: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Резерв не найден
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(HoldNotFoundException.class)
+    public ErrorResponse handleHoldNotFound(HoldNotFoundException exception) {
+        log.debug("Hold Not Found: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Резерв уже завершен в другом состоянии
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(HoldStateException.class)
+    public ErrorResponse handleHoldState(HoldStateException exception) {
+        log.debug("Hold already completed: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Некорректные параметры запроса
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidRequestException.class)
+    public ErrorResponse handleInvalidRequest(InvalidRequestException exception) {
+        log.warn("Invalid request: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Нет свободного соединения с БД за отведенное время
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler({CannotCreateTransactionException.class, CannotGetJdbcConnectionException.class})
+    public ErrorResponse handleNoConnection(RuntimeException exception) {
+        log.warn("Database unavailable: {}", exception.getMessage());
+        return new ErrorResponse("Сервис перегружен, повторите запрос позже");
+    }
+
+    // Достигнуто максимальное количество подписок на изменения балансов
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(SubscriptionLimitException.class)
+    public ErrorResponse handleSubscriptionLimit(SubscriptionLimitException exception) {
+        log.warn("Subscription limit: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Журнал отложенной записи не подтвердил пополнение
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(JournalUnavailableException.class)
+    public ErrorResponse handleJournalUnavailable(JournalUnavailableException exception) {
+        log.error("Journal unavailable: {}", exception.getMessage());
         return new ErrorResponse(exception.getMessage());
     }
 
@@ -34,7 +86,7 @@ public class GlobalExceptionHandler {
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ErrorResponse handleBadJson(HttpMessageNotReadableException exception) {
-        log.error("Invalid JSON: {}", exception.getMessage());
+        log.warn("Invalid JSON: {}", exception.getMessage());
         return new ErrorResponse("Некорректный JSON");
     }
 
@@ -46,7 +98,35 @@ public class GlobalExceptionHandler {
                 .map(err -> err.getField() + ": " + err.getDefaultMessage())
                 .findFirst()
                 .orElse("Ошибка валидации");
-        log.error("Validation error: {}", message);
+        log.warn("Validation error: {}", message);
+        return new ErrorResponse(message);
+    }
+
+    // Ошибка валидации тела операции, проверенного без Bean Validation (WalletOperationCodec)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(FieldValidationException.class)
+    public ErrorResponse handleFieldValidation(FieldValidationException exception) {
+        log.warn("Validation error: {}", exception.getMessage());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    // Битый json или некорректные параметры (профиль reactive)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(ServerWebInputException.class)
+    public ErrorResponse handleBadInput(ServerWebInputException exception) {
+        log.warn("Invalid input: {}", exception.getMessage());
+        return new ErrorResponse("Некорректный запрос");
+    }
+
+    // Ошибка валидации (профиль reactive)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ErrorResponse handleValidation(WebExchangeBindException exception) {
+        String message = exception.getBindingResult().getFieldErrors().stream()
+                .map(err -> err.getField() + ": " + err.getDefaultMessage())
+                .findFirst()
+                .orElse("Ошибка валидации");
+        log.warn("Validation error: {}", message);
         return new ErrorResponse(message);
     }
 }
@@ -0,0 +1,9 @@
+package ru.example.itktest.exception;
+
+import java.util.UUID;
+
+public class HoldNotFoundException extends RuntimeException {
+    public HoldNotFoundException(UUID id) {
+        super("Не найден резерв с id: " + id);
+    }
+}
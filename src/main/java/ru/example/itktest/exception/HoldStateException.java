@@ -0,0 +1,14 @@
+package ru.example.itktest.exception;
+
+import ru.example.itktest.model.HoldStatus;
+
+import java.util.UUID;
+
+/**
+ * Резерв уже завершен другим способом (например, подтверждение отмененного резерва)
+ */
+public class HoldStateException extends RuntimeException {
+    public HoldStateException(UUID id, HoldStatus status) {
+        super("Резерв " + id + " уже завершен, состояние: " + status);
+    }
+}
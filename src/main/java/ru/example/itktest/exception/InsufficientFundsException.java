@@ -1,6 +1,7 @@
 package ru.example.itktest.exception;
 
-import java.math.BigDecimal;
+import ru.example.itktest.model.MinorUnits;
+
 import java.util.UUID;
 
 public class InsufficientFundsException extends RuntimeException {
@@ -12,9 +13,13 @@ public class InsufficientFundsException extends RuntimeException {
         super("На счету недостаточно средств");
     }
 
-    public InsufficientFundsException(UUID walletId, BigDecimal balance, BigDecimal requested) {
+    /**
+     * @param balance баланс в копейках
+     * @param requested сумма операции в копейках
+     */
+    public InsufficientFundsException(UUID walletId, long balance, long requested) {
         super("Недостаточно средств. walletId=" + walletId +
-                ", balance=" + balance +
-                ", requested=" + requested);
+                ", balance=" + MinorUnits.toDecimal(balance) +
+                ", requested=" + MinorUnits.toDecimal(requested));
     }
 }
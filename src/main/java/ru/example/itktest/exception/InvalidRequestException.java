@@ -0,0 +1,10 @@
+package ru.example.itktest.exception;
+
+/**
+ * Запрос не прошел проверку в сервисе (некорректный параметр, курсор, переполнение баланса), ответ 400
+ */
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
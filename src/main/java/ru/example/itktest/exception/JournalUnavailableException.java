@@ -0,0 +1,15 @@
+package ru.example.itktest.exception;
+
+/**
+ * Журнал отложенной записи не подтвердил запись: сброс на диск завершился ошибкой или не уложился во время ожидания.
+ * Запись могла остаться в файле журнала и будет применена после перезапуска.
+ */
+public class JournalUnavailableException extends RuntimeException {
+    public JournalUnavailableException(String message) {
+        super(message);
+    }
+
+    public JournalUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
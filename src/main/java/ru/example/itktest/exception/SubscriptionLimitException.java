@@ -0,0 +1,10 @@
+package ru.example.itktest.exception;
+
+/**
+ * Достигнуто максимальное количество подписок на изменения балансов на узле
+ */
+public class SubscriptionLimitException extends RuntimeException {
+    public SubscriptionLimitException(int limit) {
+        super("Достигнуто максимальное количество подписок на изменения балансов: " + limit);
+    }
+}
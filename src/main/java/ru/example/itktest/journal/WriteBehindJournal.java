@@ -0,0 +1,405 @@
+package ru.example.itktest.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.example.itktest.exception.JournalUnavailableException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Локальный файл журнала отложенной записи: последовательность сегментов фиксированного размера,
+ * отображенных в память.
+ * <p>
+ * Запись занимает {@value #ENTRY_SIZE} байт: номер (long), ID кошелька (два long), сумма в копейках (long)
+ * и CRC32C первых 32 байт (int). Номера идут подряд, запись с номером n лежит в сегменте с первым номером f
+ * по смещению (n - f) * {@value #ENTRY_SIZE}. Запись считается надежной после force() ее сегмента; force выполняет
+ * отдельный поток сразу для всех записей, добавленных к этому моменту, поэтому конкурентные добавления ждут
+ * одного сброса на диск.
+ * <p>
+ * При открытии сегменты читаются до первой записи с неверным номером или контрольной суммой (оборванная запись
+ * при сбое), остаток сегмента обнуляется, а более поздние сегменты удаляются: в них могут быть только
+ * неподтвержденные записи.
+ * <p>
+ * Если сброс на диск завершился ошибкой, журнал переходит в состояние отказа: ожидающие и новые добавления
+ * получают {@link JournalUnavailableException}, а записи после последней надежной не применяются до перезапуска.
+ */
+@Slf4j
+public class WriteBehindJournal implements Closeable {
+    public static final int ENTRY_SIZE = 36;
+    private static final int CHECKSUM_OFFSET = 32;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String ID_FILE = "journal.id";
+
+    /**
+     * Запись журнала
+     * @param seq номер записи
+     * @param walletId ID кошелька
+     * @param amount сумма пополнения в копейках
+     */
+    public record Entry(long seq, UUID walletId, long amount) {
+    }
+
+    private final Path directory;
+    private final int entriesPerSegment;
+    private final UUID journalId;
+
+    /**
+     * Сегменты по номеру первой записи
+     */
+    private final NavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    private final Object appendLock = new Object();
+    private final CRC32C checksum = new CRC32C();
+    private volatile MappedByteBuffer current;
+    private long currentFirstSeq;
+    private long lastSeq;
+
+    private final Object syncMonitor = new Object();
+    private volatile long writtenSeq;
+    private volatile long durableSeq;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+    private final Thread syncThread;
+
+    private WriteBehindJournal(Path directory, int entriesPerSegment) throws IOException {
+        this.directory = directory;
+        this.entriesPerSegment = entriesPerSegment;
+        Files.createDirectories(directory);
+        this.journalId = readOrCreateId();
+        recover();
+        this.syncThread = new Thread(this::syncLoop, "wallet-journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    /**
+     * Открытие журнала с восстановлением после сбоя
+     * @param directory каталог журнала
+     * @param segmentSize размер сегмента в байтах
+     */
+    public static WriteBehindJournal open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < ENTRY_SIZE) {
+            throw new IllegalArgumentException("Размер сегмента меньше размера записи");
+        }
+        return new WriteBehindJournal(directory, segmentSize / ENTRY_SIZE);
+    }
+
+    /**
+     * Идентификатор журнала, создается при первом открытии каталога
+     */
+    public UUID getJournalId() {
+        return journalId;
+    }
+
+    /**
+     * Номер последней записи, сброшенной на диск
+     */
+    public long getDurableSeq() {
+        return durableSeq;
+    }
+
+    /**
+     * Добавление записи. Запись еще не надежна, подтверждать ее можно после {@link #awaitDurable(long, Duration)}.
+     * @param walletId ID кошелька
+     * @param amount сумма пополнения в копейках
+     * @param onAppended вызывается под блокировкой добавления с номером записи до ее записи в сегмент;
+     *                   исключение из него отменяет добавление
+     * @return номер записи
+     */
+    public long append(UUID walletId, long amount, LongConsumer onAppended) {
+        long seq;
+        synchronized (appendLock) {
+            if (failure != null) {
+                throw new JournalUnavailableException("Журнал отложенной записи недоступен", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Журнал закрыт");
+            }
+            seq = lastSeq + 1;
+            if (seq - currentFirstSeq == entriesPerSegment) {
+                rotate(seq);
+            }
+            onAppended.accept(seq);
+            int position = (int) (seq - currentFirstSeq) * ENTRY_SIZE;
+            MappedByteBuffer segment = current;
+            segment.putLong(position, seq);
+            segment.putLong(position + 8, walletId.getMostSignificantBits());
+            segment.putLong(position + 16, walletId.getLeastSignificantBits());
+            segment.putLong(position + 24, amount);
+            checksum.reset();
+            checksum.update(segment.slice(position, CHECKSUM_OFFSET));
+            segment.putInt(position + CHECKSUM_OFFSET, (int) checksum.getValue());
+            lastSeq = seq;
+            writtenSeq = seq;
+        }
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll();
+        }
+        return seq;
+    }
+
+    /**
+     * Ожидание сброса записи на диск
+     * @param seq номер записи
+     * @param timeout максимальное время ожидания
+     * @throws JournalUnavailableException если сброс завершился ошибкой или не уложился в timeout
+     */
+    public void awaitDurable(long seq, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (syncMonitor) {
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    throw new JournalUnavailableException("Запись " + seq + " не сброшена на диск", failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Журнал закрыт до сброса записи " + seq);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new JournalUnavailableException("Запись " + seq + " не сброшена на диск за " + timeout);
+                }
+                try {
+                    syncMonitor.wait(Math.max(1, remaining / 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ожидание сброса журнала прервано", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Чтение записей
+     * @param fromSeq номер первой записи
+     * @param toSeq номер последней записи, не больше {@link #getDurableSeq()}
+     * @param consumer обработчик записей
+     */
+    public void read(long fromSeq, long toSeq, Consumer<Entry> consumer) {
+        for (long seq = fromSeq; seq <= toSeq; seq++) {
+            Map.Entry<Long, MappedByteBuffer> segment = segments.floorEntry(seq);
+            if (segment == null) {
+                throw new IllegalStateException("Запись " + seq + " отсутствует в журнале");
+            }
+            int position = (int) (seq - segment.getKey()) * ENTRY_SIZE;
+            MappedByteBuffer buffer = segment.getValue();
+            consumer.accept(new Entry(
+                    buffer.getLong(position),
+                    new UUID(buffer.getLong(position + 8), buffer.getLong(position + 16)),
+                    buffer.getLong(position + 24)));
+        }
+    }
+
+    /**
+     * Удаление сегментов, все записи которых применены.
+     * Текущий сегмент не удаляется, чтобы нумерация продолжилась после перезапуска.
+     * @param appliedSeq номер последней примененной записи
+     */
+    public void release(long appliedSeq) {
+        synchronized (appendLock) {
+            List<Long> released = new ArrayList<>();
+            for (Long firstSeq : segments.keySet()) {
+                Long nextFirstSeq = segments.higherKey(firstSeq);
+                if (nextFirstSeq == null || nextFirstSeq - 1 > appliedSeq) {
+                    break;
+                }
+                released.add(firstSeq);
+            }
+            for (Long firstSeq : released) {
+                segments.remove(firstSeq);
+                try {
+                    Files.deleteIfExists(segmentPath(firstSeq));
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить сегмент журнала {}", segmentPath(firstSeq), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (appendLock) {
+            closed = true;
+        }
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Поток сброса на диск: один force() на все записи, добавленные к моменту его начала
+     */
+    private void syncLoop() {
+        while (true) {
+            long target;
+            synchronized (syncMonitor) {
+                while (writtenSeq <= durableSeq && !closed && failure == null) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (failure != null || writtenSeq <= durableSeq) {
+                    return;
+                }
+                target = writtenSeq;
+            }
+            try {
+                // предыдущие сегменты сброшены при переходе на текущий
+                current.force();
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            synchronized (syncMonitor) {
+                if (failure != null) {
+                    return;
+                }
+                durableSeq = target;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Перевод журнала в состояние отказа и пробуждение ожидающих сброса
+     */
+    private void fail(RuntimeException e) {
+        log.error("Не удалось сбросить журнал на диск, записи после {} не подтверждены", durableSeq, e);
+        synchronized (syncMonitor) {
+            failure = e;
+            syncMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Переход на новый сегмент. Вызывается под appendLock.
+     */
+    private void rotate(long firstSeq) {
+        try {
+            current.force();
+        } catch (RuntimeException e) {
+            // поток сброса не должен подтвердить записи этого сегмента сбросом следующего
+            fail(e);
+            throw new JournalUnavailableException("Журнал отложенной записи недоступен", e);
+        }
+        try {
+            MappedByteBuffer segment = map(firstSeq);
+            segments.put(firstSeq, segment);
+            currentFirstSeq = firstSeq;
+            current = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> firstSeqs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(firstSeqs::add);
+        }
+        if (firstSeqs.isEmpty()) {
+            firstSeqs.add(1L);
+        }
+
+        long expected = firstSeqs.get(0);
+        boolean broken = false;
+        for (Long firstSeq : firstSeqs) {
+            if (broken || firstSeq != expected) {
+                // сегмент после оборванной записи
+                Files.deleteIfExists(segmentPath(firstSeq));
+                broken = true;
+                continue;
+            }
+            MappedByteBuffer segment = map(firstSeq);
+            segments.put(firstSeq, segment);
+            currentFirstSeq = firstSeq;
+            current = segment;
+            int slot = 0;
+            while (slot < entriesPerSegment && isValid(segment, slot * ENTRY_SIZE, expected)) {
+                slot++;
+                expected++;
+            }
+            if (slot < entriesPerSegment) {
+                byte[] zeros = new byte[8192];
+                int end = entriesPerSegment * ENTRY_SIZE;
+                for (int position = slot * ENTRY_SIZE; position < end; position += zeros.length) {
+                    segment.put(position, zeros, 0, Math.min(zeros.length, end - position));
+                }
+                segment.force();
+                broken = true;
+            }
+        }
+        lastSeq = expected - 1;
+        writtenSeq = lastSeq;
+        durableSeq = lastSeq;
+        if (lastSeq - currentFirstSeq + 1 == entriesPerSegment) {
+            rotate(lastSeq + 1);
+        }
+        log.info("Журнал отложенной записи {} открыт, последняя запись {}", journalId, lastSeq);
+    }
+
+    private boolean isValid(MappedByteBuffer segment, int position, long expectedSeq) {
+        if (segment.getLong(position) != expectedSeq) {
+            return false;
+        }
+        checksum.reset();
+        checksum.update(segment.slice(position, CHECKSUM_OFFSET));
+        return segment.getInt(position + CHECKSUM_OFFSET) == (int) checksum.getValue();
+    }
+
+    private MappedByteBuffer map(long firstSeq) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(firstSeq),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) entriesPerSegment * ENTRY_SIZE);
+        }
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return directory.resolve(String.format("%020d%s", firstSeq, SEGMENT_SUFFIX));
+    }
+
+    private UUID readOrCreateId() throws IOException {
+        Path idFile = directory.resolve(ID_FILE);
+        if (Files.exists(idFile)) {
+            return UUID.fromString(Files.readString(idFile, StandardCharsets.UTF_8).trim());
+        }
+        UUID id = UUID.randomUUID();
+        Path tmp = directory.resolve(ID_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(StandardCharsets.UTF_8.encode(id.toString()));
+            channel.force(true);
+        }
+        Files.move(tmp, idFile, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+}
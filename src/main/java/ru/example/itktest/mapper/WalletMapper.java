@@ -0,0 +1,23 @@
+package ru.example.itktest.mapper;
+
+import org.springframework.stereotype.Component;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.Wallet;
+
+/**
+ * Маппинг кошелька в DTO.
+ * Поля копируются напрямую, без рефлексии и промежуточных объектов.
+ */
+@Component
+public class WalletMapper {
+
+    /**
+     * Маппинг кошелька в WalletDto
+     * @param wallet кошелек
+     * @return DTO кошелька
+     */
+    public WalletDto toDto(Wallet wallet) {
+        return new WalletDto(wallet.getId(), MinorUnits.toDecimal(wallet.getAmount()));
+    }
+}
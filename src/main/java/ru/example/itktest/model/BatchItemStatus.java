@@ -0,0 +1,27 @@
+package ru.example.itktest.model;
+
+import lombok.Getter;
+
+@Getter
+public enum BatchItemStatus {
+    APPLIED("Проведена"),
+    NOT_FOUND("Кошелек не найден"),
+    INSUFFICIENT_FUNDS("Недостаточно средств"),
+    INVALID("Ошибка валидации"),
+    ROLLED_BACK("Отменена вместе с пакетом"),
+    FAILED("Ошибка при проведении");
+
+    /**
+     * Отображаемый результат операции
+     */
+    private final String displayName;
+
+    /**
+     * Конструктор результата операции в пакете
+     * @param displayName отображаемый результат операции
+     */
+    BatchItemStatus(String displayName) {
+        this.displayName = displayName;
+    }
+
+}
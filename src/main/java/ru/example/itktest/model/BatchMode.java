@@ -0,0 +1,23 @@
+package ru.example.itktest.model;
+
+import lombok.Getter;
+
+@Getter
+public enum BatchMode {
+    ALL_OR_NOTHING("Все или ничего"),
+    BEST_EFFORT("По возможности");
+
+    /**
+     * Отображаемое название режима
+     */
+    private final String displayName;
+
+    /**
+     * Конструктор режима проведения пакета операций
+     * @param displayName отображаемое название режима
+     */
+    BatchMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+}
@@ -0,0 +1,23 @@
+package ru.example.itktest.model;
+
+/**
+ * Состояние резерва средств
+ */
+public enum HoldStatus {
+    /**
+     * Средства зарезервированы и недоступны для списания
+     */
+    ACTIVE,
+    /**
+     * Зарезервированные средства списаны
+     */
+    CAPTURED,
+    /**
+     * Резерв отменен, средства возвращены в доступный баланс
+     */
+    RELEASED,
+    /**
+     * Резерв не подтвержден вовремя, средства возвращены в доступный баланс
+     */
+    EXPIRED
+}
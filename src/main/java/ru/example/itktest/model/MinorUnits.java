@@ -0,0 +1,82 @@
+package ru.example.itktest.model;
+
+import ru.example.itktest.exception.InvalidRequestException;
+
+import java.math.BigDecimal;
+
+/**
+ * Денежные суммы в минимальных единицах (копейках).
+ * <p>
+ * Балансы хранятся в БД как BIGINT и обрабатываются приложением как long. В BigDecimal суммы
+ * переводятся только на границе API: при чтении запроса и при формировании ответа.
+ */
+public final class MinorUnits {
+    /**
+     * Количество знаков после запятой
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Максимальное количество знаков до запятой в сумме запроса.
+     * Сумма любых двух таких значений в копейках не выходит за пределы long.
+     */
+    public static final int MAX_INTEGER_DIGITS = 15;
+
+    /**
+     * Сообщение о переполнении баланса
+     */
+    public static final String OVERFLOW = "Баланс кошелька превысит допустимое значение";
+
+    /**
+     * SQLSTATE numeric_value_out_of_range: баланс в БД вышел за пределы BIGINT
+     */
+    public static final String OUT_OF_RANGE_SQL_STATE = "22003";
+
+    private MinorUnits() {
+    }
+
+    /**
+     * Перевод суммы из запроса в копейки
+     * @param amount сумма, не больше {@value #SCALE} знаков после запятой
+     * @return сумма в копейках
+     */
+    public static long of(BigDecimal amount) {
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new InvalidRequestException("Сумма должна содержать не больше " + SCALE + " знаков после запятой: " + amount);
+        }
+    }
+
+    /**
+     * Перевод суммы в копейках в сумму для ответа
+     * @param minor сумма в копейках
+     * @return сумма с {@value #SCALE} знаками после запятой
+     */
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * Перевод суммы в копейках в сумму для ответа
+     * @param minor сумма в копейках, либо null
+     * @return сумма с {@value #SCALE} знаками после запятой, либо null
+     */
+    public static BigDecimal toDecimal(Long minor) {
+        return minor == null ? null : toDecimal(minor.longValue());
+    }
+
+    /**
+     * Сложение сумм с проверкой переполнения
+     * @param balance баланс в копейках
+     * @param amount сумма в копейках
+     * @return новый баланс в копейках
+     */
+    public static long add(long balance, long amount) {
+        try {
+            return Math.addExact(balance, amount);
+        } catch (ArithmeticException e) {
+            throw new InvalidRequestException(OVERFLOW);
+        }
+    }
+}
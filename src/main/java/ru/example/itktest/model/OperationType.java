@@ -5,7 +5,8 @@ import lombok.Getter;
 @Getter
 public enum OperationType {
     DEPOSIT("Внести"),
-    WITHDRAW("Вывести");
+    WITHDRAW("Вывести"),
+    TRANSFER("Перевести");
 
     /**
      * Отображаемый тип операции
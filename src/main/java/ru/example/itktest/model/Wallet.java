@@ -5,7 +5,6 @@ import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
@@ -21,15 +20,18 @@ import java.util.UUID;
 @Table(name = "wallets")
 public class Wallet {
 
+    /**
+     * ID, по умолчанию упорядоченный по времени создания (wallet.id.strategy)
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @WalletId
     private UUID id;
 
     /**
-     * Сумма на счете
+     * Сумма на счете в копейках
      */
-    @Column(nullable = false, precision = 19, scale = 2)
-    private BigDecimal amount;
+    @Column(nullable = false)
+    private long amount;
 
     /**
      * Время создания
@@ -0,0 +1,17 @@
+package ru.example.itktest.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * ID кошелька, генерируемый {@link WalletIdGenerator} по wallet.id.strategy
+ */
+@IdGeneratorType(WalletIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface WalletId {
+}
@@ -0,0 +1,41 @@
+package ru.example.itktest.model;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+
+/**
+ * Генератор ID кошельков для Hibernate.
+ * Способ генерации берется из настройки Hibernate {@value #STRATEGY_SETTING}, которую выставляет
+ * WalletIdConfig из wallet.id.strategy; без нее ID случайные.
+ */
+public class WalletIdGenerator implements BeforeExecutionGenerator {
+    public static final String STRATEGY_SETTING = "wallet.id.strategy";
+
+    private final WalletIdStrategy strategy;
+
+    public WalletIdGenerator(WalletId config, Member member, CustomIdGeneratorCreationContext context) {
+        Object setting = context.getServiceRegistry().getService(ConfigurationService.class)
+                .getSettings().get(STRATEGY_SETTING);
+        this.strategy = setting == null ? WalletIdStrategy.RANDOM
+                : setting instanceof WalletIdStrategy configured ? configured
+                : WalletIdStrategy.valueOf(setting.toString());
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return strategy.next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
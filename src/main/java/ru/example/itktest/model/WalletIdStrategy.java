@@ -0,0 +1,57 @@
+package ru.example.itktest.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Способ генерации ID новых кошельков (wallet.id.strategy).
+ * <p>
+ * Существующие ID не меняются: оба вида - обычные UUID, поэтому кошельки с ID разных видов хранятся
+ * и ищутся одинаково.
+ */
+public enum WalletIdStrategy {
+    /**
+     * Случайный UUID версии 4. Новые строки попадают в случайные страницы индекса wallets_pkey
+     */
+    RANDOM {
+        @Override
+        public UUID next() {
+            return UUID.randomUUID();
+        }
+    },
+
+    /**
+     * UUID версии 7 (RFC 9562): 48 бит времени в миллисекундах, 12-битный счетчик и 62 случайных бита.
+     * ID, выданные процессом, строго возрастают при сравнении байтов (как uuid в Postgres), поэтому
+     * новые строки дописываются в конец индекса. Счетчик начинается в каждой миллисекунде со случайного
+     * значения, а при переполнении переносится во время. ID раскрывает время создания кошелька
+     * и не является секретом.
+     */
+    TIME_ORDERED {
+        /**
+         * Время в миллисекундах, сдвинутое на 12 бит, и счетчик последнего выданного ID
+         */
+        private final AtomicLong last = new AtomicLong();
+
+        @Override
+        public UUID next() {
+            long now = System.currentTimeMillis() << 12;
+            long prev;
+            long next;
+            do {
+                prev = last.get();
+                next = now > prev ? now | ThreadLocalRandom.current().nextInt(1 << 11) : prev + 1;
+            } while (!last.compareAndSet(prev, next));
+
+            long msb = (next >>> 12) << 16 | 0x7000L | (next & 0xFFFL);
+            long lsb = ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+            return new UUID(msb, lsb);
+        }
+    };
+
+    /**
+     * @return ID нового кошелька
+     */
+    public abstract UUID next();
+}
@@ -0,0 +1,78 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Хранилище ключей идемпотентности операций
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyKeyRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Захват ключа в текущей транзакции.
+     * Если ключ захвачен незафиксированной транзакцией, запрос ждет ее завершения.
+     * @param key ключ идемпотентности
+     * @param walletId кошелек операции
+     * @param requestDigest отпечаток запроса
+     * @return true, если ключ захвачен; false, если ключ уже существует
+     */
+    public boolean claim(String key, UUID walletId, byte[] requestDigest) {
+        return jdbcTemplate.update("""
+                INSERT INTO wallet_idempotency_keys (idempotency_key, wallet_id, request_digest, created_at)
+                VALUES (?, ?, ?, localtimestamp)
+                ON CONFLICT DO NOTHING
+                """, key, walletId, requestDigest) == 1;
+    }
+
+    /**
+     * Сохранение результата операции для захваченного ключа
+     * @param key ключ идемпотентности
+     * @param amount баланс кошелька в копейках после операции
+     */
+    public void complete(String key, long amount) {
+        jdbcTemplate.update("UPDATE wallet_idempotency_keys SET amount = ? WHERE idempotency_key = ?", amount, key);
+    }
+
+    /**
+     * Получение сохраненного результата
+     * @param key ключ идемпотентности
+     * @return результат операции, либо пустой результат, если ключа нет
+     */
+    public Optional<IdempotencyRecord> find(String key) {
+        return jdbcTemplate.query("""
+                SELECT wallet_id, request_digest, amount
+                FROM wallet_idempotency_keys
+                WHERE idempotency_key = ?
+                """, (rs, rowNum) -> new IdempotencyRecord(
+                        rs.getObject(1, UUID.class), rs.getBytes(2), rs.getLong(3)), key)
+                .stream().findFirst();
+    }
+
+    /**
+     * Удаление порции устаревших ключей
+     * @param before ключи, созданные раньше этого времени, удаляются
+     * @param limit максимальное количество удаляемых ключей
+     * @return количество удаленных ключей
+     */
+    public int deleteExpired(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("""
+                DELETE FROM wallet_idempotency_keys
+                WHERE idempotency_key IN (
+                    SELECT idempotency_key
+                    FROM wallet_idempotency_keys
+                    WHERE created_at < ?
+                    LIMIT ?
+                )
+                """, before, limit);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.example.itktest.repository;
+
+import java.util.UUID;
+
+/**
+ * Сохраненный результат операции с ключом идемпотентности
+ * @param walletId кошелек, над которым проведена операция
+ * @param requestDigest отпечаток запроса для проверки повторного использования ключа, либо null у ключей без отпечатка
+ * @param amount баланс кошелька в копейках после операции
+ */
+public record IdempotencyRecord(UUID walletId, byte[] requestDigest, long amount) {}
@@ -0,0 +1,9 @@
+package ru.example.itktest.repository;
+
+/**
+ * Результат операции над кошельком в режиме журнала
+ * @param amount баланс в копейках после операции, либо текущий баланс, если операция не проведена
+ * @param applied была ли проведена операция
+ */
+public record LedgerBalance(long amount, boolean applied) {
+}
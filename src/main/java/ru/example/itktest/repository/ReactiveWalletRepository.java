@@ -0,0 +1,353 @@
+package ru.example.itktest.repository;
+
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.WalletIdStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Неблокирующие запросы к кошелькам через R2DBC (профиль reactive).
+ * <p>
+ * Запросы совпадают с запросами {@link WalletRepository} и {@link WalletJdbcRepository}:
+ * пополнение и списание - атомарные UPDATE ... RETURNING с проверкой баланса в том же запросе,
+ * баланс кошелька включает суммы его частей из wallet_stripes.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveWalletRepository {
+    private final DatabaseClient databaseClient;
+
+    @Value("${wallet.id.strategy:TIME_ORDERED}")
+    private WalletIdStrategy idStrategy;
+
+    /**
+     * Создание кошелька с нулевым балансом
+     * @return созданный кошелек
+     */
+    public Mono<WalletDto> create() {
+        return databaseClient.sql("""
+                        INSERT INTO wallets (id, amount, created_at, updated_at)
+                        VALUES (:id, 0, localtimestamp, localtimestamp)
+                        RETURNING id, amount
+                        """)
+                .bind("id", idStrategy.next())
+                .map(ReactiveWalletRepository::toWallet)
+                .one();
+    }
+
+    /**
+     * Получение баланса кошелька
+     * @param id кошелька
+     * @return текущий баланс, либо пустой результат, если кошелек не найден
+     */
+    public Mono<WalletBalanceView> findBalanceById(UUID id) {
+        return databaseClient.sql("""
+                        SELECT w.amount + %s AS amount, w.updated_at, true AS applied
+                        FROM wallets w
+                        WHERE w.id = :id
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                .bind("id", id)
+                .map(ReactiveWalletRepository::toBalance)
+                .one();
+    }
+
+    /**
+     * Атомарное внесение денежной суммы
+     * @param id кошелька
+     * @param amount сумма
+     * @return новый баланс, либо пустой результат, если кошелек не найден
+     */
+    public Mono<WalletBalanceView> deposit(UUID id, long amount) {
+        return databaseClient.sql("""
+                        UPDATE wallets w
+                        SET amount = w.amount + :amount,
+                            updated_at = clock_timestamp()
+                        WHERE w.id = :id
+                        RETURNING w.amount + %s AS amount, w.updated_at, true AS applied
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                .bind("id", id)
+                .bind("amount", amount)
+                .map(ReactiveWalletRepository::toBalance)
+                .one();
+    }
+
+    /**
+     * Атомарное внесение денежной суммы в одну из частей баланса кошелька
+     * @param id кошелька
+     * @param stripe номер части
+     * @param amount сумма
+     * @return новый баланс по данным на момент запроса, либо пустой результат, если такой части нет
+     */
+    public Mono<WalletBalanceView> depositToStripe(UUID id, int stripe, long amount) {
+        return databaseClient.sql("""
+                        WITH updated AS (
+                            UPDATE wallet_stripes
+                            SET amount = amount + :amount
+                            WHERE wallet_id = :id
+                            AND stripe = :stripe
+                            RETURNING wallet_id
+                        )
+                        SELECT w.amount + %s + :amount AS amount, clock_timestamp() AS updated_at, true AS applied
+                        FROM wallets w
+                        WHERE w.id = :id
+                        AND EXISTS (SELECT 1 FROM updated)
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                .bind("id", id)
+                .bind("stripe", stripe)
+                .bind("amount", amount)
+                .map(ReactiveWalletRepository::toBalance)
+                .one();
+    }
+
+    /**
+     * Атомарное снятие денежной суммы из строки кошелька.
+     * Если средств недостаточно, тот же запрос возвращает текущий баланс с признаком applied = false.
+     * @param id кошелька
+     * @param amount сумма
+     * @return новый или текущий баланс, либо пустой результат, если кошелек не найден
+     */
+    public Mono<WalletBalanceView> withdraw(UUID id, long amount) {
+        return databaseClient.sql("""
+                        WITH updated AS (
+                            UPDATE wallets
+                            SET amount = amount - :amount,
+                                updated_at = clock_timestamp()
+                            WHERE id = :id
+                            AND amount >= :amount
+                            RETURNING id, amount, updated_at
+                        )
+                        SELECT w.amount + %1$s AS amount, w.updated_at, true AS applied
+                        FROM updated w
+                        UNION ALL
+                        SELECT w.amount + %1$s AS amount, w.updated_at, false AS applied
+                        FROM wallets w
+                        WHERE w.id = :id
+                        AND NOT EXISTS (SELECT 1 FROM updated)
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                .bind("id", id)
+                .bind("amount", amount)
+                .map(ReactiveWalletRepository::toBalance)
+                .one();
+    }
+
+    /**
+     * Блокировка кошельков до конца транзакции в порядке возрастания ID с переносом частей
+     * балансов в строки кошельков (как {@link WalletJdbcRepository#lockBalances(Collection)})
+     * @param ids кошельков
+     * @return текущие балансы найденных кошельков в копейках
+     */
+    public Mono<Map<UUID, Long>> lockBalances(Collection<UUID> ids) {
+        UUID[] array = ids.toArray(UUID[]::new);
+        Mono<Map<UUID, Long>> locked = databaseClient.sql("""
+                        SELECT id, amount
+                        FROM wallets
+                        WHERE id = ANY(:ids)
+                        ORDER BY id
+                        FOR UPDATE
+                        """)
+                .bind("ids", array)
+                .map(row -> Map.entry(row.get("id", UUID.class), row.get("amount", Long.class)))
+                .all()
+                .collect(HashMap::new, (map, entry) -> map.put(entry.getKey(), entry.getValue()));
+        return locked.flatMap(balances -> balances.isEmpty()
+                ? Mono.just(balances)
+                : databaseClient.sql("""
+                                WITH locked AS (
+                                    SELECT wallet_id, stripe, amount
+                                    FROM wallet_stripes
+                                    WHERE wallet_id = ANY(:ids)
+                                    AND amount > 0
+                                    ORDER BY wallet_id, stripe
+                                    FOR UPDATE
+                                ), cleared AS (
+                                    UPDATE wallet_stripes s
+                                    SET amount = 0
+                                    FROM locked l
+                                    WHERE s.wallet_id = l.wallet_id
+                                    AND s.stripe = l.stripe
+                                    RETURNING l.wallet_id, l.amount
+                                ), totals AS (
+                                    SELECT wallet_id, sum(amount)::bigint AS amount
+                                    FROM cleared
+                                    GROUP BY wallet_id
+                                )
+                                UPDATE wallets w
+                                SET amount = w.amount + t.amount
+                                FROM totals t
+                                WHERE w.id = t.wallet_id
+                                RETURNING w.id, t.amount
+                                """)
+                        .bind("ids", array)
+                        .map(row -> Map.entry(row.get("id", UUID.class), row.get("amount", Long.class)))
+                        .all()
+                        .doOnNext(swept -> balances.merge(swept.getKey(), swept.getValue(), Long::sum))
+                        .then(Mono.just(balances)));
+    }
+
+    /**
+     * Запись баланса, рассчитанного под блокировкой строки
+     * @param id кошелька
+     * @param amount новый баланс в копейках
+     * @return записанный баланс
+     */
+    public Mono<WalletBalanceRow> setAmount(UUID id, long amount) {
+        return databaseClient.sql("""
+                        UPDATE wallets w
+                        SET amount = :amount,
+                            updated_at = clock_timestamp()
+                        WHERE w.id = :id
+                        RETURNING w.id, w.amount + %s AS amount, w.updated_at
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                .bind("id", id)
+                .bind("amount", amount)
+                .map(row -> new WalletBalanceRow(row.get("id", UUID.class),
+                        row.get("amount", Long.class), row.get("updated_at", LocalDateTime.class)))
+                .one();
+    }
+
+    /**
+     * Страница кошельков в порядке возрастания ID (keyset-пагинация по первичному ключу)
+     * @param after последний ID предыдущей страницы, либо null для первой страницы
+     * @param limit размер страницы
+     * @return кошельки страницы
+     */
+    public Flux<WalletDto> findPage(UUID after, int limit) {
+        DatabaseClient.GenericExecuteSpec spec = after == null
+                ? databaseClient.sql("""
+                        SELECT w.id, w.amount + %s AS amount
+                        FROM wallets w
+                        ORDER BY w.id
+                        LIMIT :limit
+                        """.formatted(WalletSql.STRIPES_TOTAL))
+                : databaseClient.sql("""
+                        SELECT w.id, w.amount + %s AS amount
+                        FROM wallets w
+                        WHERE w.id > :after
+                        ORDER BY w.id
+                        LIMIT :limit
+                        """.formatted(WalletSql.STRIPES_TOTAL)).bind("after", after);
+        return spec.bind("limit", limit)
+                .map(ReactiveWalletRepository::toWallet)
+                .all();
+    }
+
+    /**
+     * Последовательное чтение всех кошельков порциями по fetchSize.
+     * Следующая порция запрашивается по мере потребления, поэтому память не зависит от размера таблицы.
+     * @param fetchSize размер порции
+     * @return все кошельки в порядке возрастания ID
+     */
+    public Flux<WalletDto> findAll(int fetchSize) {
+        return databaseClient.sql("SELECT w.id, w.amount + " + WalletSql.STRIPES_TOTAL + " AS amount FROM wallets w ORDER BY w.id")
+                .filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+                .map(ReactiveWalletRepository::toWallet)
+                .all();
+    }
+
+    /**
+     * Захват ключа идемпотентности в текущей транзакции
+     * (как {@link IdempotencyKeyRepository#claim(String, UUID, int)})
+     * @return true, если ключ захвачен; false, если ключ уже существует
+     */
+    public Mono<Boolean> claimIdempotencyKey(String key, UUID walletId, byte[] requestDigest) {
+        return databaseClient.sql("""
+                        INSERT INTO wallet_idempotency_keys (idempotency_key, wallet_id, request_digest, created_at)
+                        VALUES (:key, :walletId, :requestDigest, localtimestamp)
+                        ON CONFLICT DO NOTHING
+                        """)
+                .bind("key", key)
+                .bind("walletId", walletId)
+                .bind("requestDigest", requestDigest)
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated == 1);
+    }
+
+    /**
+     * Сохранение результата операции для захваченного ключа идемпотентности
+     */
+    public Mono<Void> completeIdempotencyKey(String key, long amount) {
+        return databaseClient.sql("UPDATE wallet_idempotency_keys SET amount = :amount WHERE idempotency_key = :key")
+                .bind("key", key)
+                .bind("amount", amount)
+                .then();
+    }
+
+    /**
+     * Получение сохраненного результата по ключу идемпотентности
+     */
+    public Mono<IdempotencyRecord> findIdempotencyKey(String key) {
+        return databaseClient.sql("""
+                        SELECT wallet_id, request_digest, amount
+                        FROM wallet_idempotency_keys
+                        WHERE idempotency_key = :key
+                        """)
+                .bind("key", key)
+                .map(row -> new IdempotencyRecord(row.get("wallet_id", UUID.class),
+                        row.get("request_digest", byte[].class), row.get("amount", Long.class)))
+                .one();
+    }
+
+    /**
+     * Запись операций в историю одним запросом (см. {@link WalletHistoryRepository#insert(List)})
+     * @param entries записи истории в порядке проведения операций
+     */
+    public Mono<Void> insertOperations(List<WalletHistoryEntry> entries) {
+        return databaseClient.sql("""
+                        INSERT INTO wallet_operations (wallet_id, type, amount, balance, counterparty_id, created_at)
+                        SELECT v.wallet_id, v.type, v.amount, v.balance, v.counterparty_id, clock_timestamp()
+                        FROM unnest(:walletIds::uuid[], :types::varchar[], :amounts::bigint[], :balances::bigint[],
+                                    :counterpartyIds::uuid[]) AS v(wallet_id, type, amount, balance, counterparty_id)
+                        """)
+                .bind("walletIds", entries.stream().map(WalletHistoryEntry::walletId).toArray(UUID[]::new))
+                .bind("types", entries.stream().map(entry -> entry.type().name()).toArray(String[]::new))
+                .bind("amounts", entries.stream().map(WalletHistoryEntry::amount).toArray(Long[]::new))
+                .bind("balances", entries.stream().map(WalletHistoryEntry::balance).toArray(Long[]::new))
+                .bind("counterpartyIds", entries.stream().map(WalletHistoryEntry::counterpartyId).toArray(UUID[]::new))
+                .then();
+    }
+
+    private static WalletDto toWallet(Readable row) {
+        return new WalletDto(row.get("id", UUID.class), MinorUnits.toDecimal(row.get("amount", Long.class)));
+    }
+
+    private static WalletBalanceView toBalance(Readable row) {
+        return new Balance(row.get("amount", Long.class),
+                row.get("updated_at", LocalDateTime.class), row.get("applied", Boolean.class));
+    }
+
+    /**
+     * Результат запроса к балансу кошелька
+     */
+    private record Balance(Long amount, LocalDateTime updatedAt, Boolean applied) implements WalletBalanceView {
+        @Override
+        public Long getAmount() {
+            return amount;
+        }
+
+        @Override
+        public LocalDateTime getUpdatedAt() {
+            return updatedAt;
+        }
+
+        @Override
+        public Boolean getApplied() {
+            return applied;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.example.itktest.repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Баланс кошелька, прочитанный или записанный через JDBC
+ * @param id кошелька
+ * @param amount сумма на счете в копейках
+ * @param updatedAt время последнего обновления
+ */
+public record WalletBalanceRow(UUID id, long amount, LocalDateTime updatedAt) {}
@@ -0,0 +1,23 @@
+package ru.example.itktest.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция результата атомарной операции над кошельком
+ */
+public interface WalletBalanceView {
+    /**
+     * Баланс в копейках после операции, либо текущий баланс, если операция не проведена
+     */
+    Long getAmount();
+
+    /**
+     * Время последнего обновления кошелька
+     */
+    LocalDateTime getUpdatedAt();
+
+    /**
+     * Была ли проведена операция (для чтения баланса всегда true)
+     */
+    Boolean getApplied();
+}
@@ -0,0 +1,34 @@
+package ru.example.itktest.repository;
+
+import ru.example.itktest.model.OperationType;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Запись истории операций кошелька
+ * @param walletId кошелька
+ * @param type тип операции
+ * @param amount изменение баланса в копейках: положительное при зачислении, отрицательное при списании
+ * @param balance баланс в копейках после операции, либо null, если он неизвестен на момент записи
+ * @param counterpartyId второй кошелек перевода, либо null
+ */
+public record WalletHistoryEntry(UUID walletId, OperationType type, long amount, Long balance, UUID counterpartyId) {
+
+    public static WalletHistoryEntry deposit(UUID id, long amount, Long balance) {
+        return new WalletHistoryEntry(id, OperationType.DEPOSIT, amount, balance, null);
+    }
+
+    public static WalletHistoryEntry withdraw(UUID id, long amount, Long balance) {
+        return new WalletHistoryEntry(id, OperationType.WITHDRAW, -amount, balance, null);
+    }
+
+    /**
+     * Записи перевода: списание у отправителя и зачисление получателю
+     */
+    public static List<WalletHistoryEntry> transfer(UUID fromId, UUID toId, long amount, Long fromBalance, Long toBalance) {
+        return List.of(
+                new WalletHistoryEntry(fromId, OperationType.TRANSFER, -amount, fromBalance, toId),
+                new WalletHistoryEntry(toId, OperationType.TRANSFER, amount, toBalance, fromId));
+    }
+}
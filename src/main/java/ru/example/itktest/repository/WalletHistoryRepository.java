@@ -0,0 +1,164 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.example.itktest.dto.WalletOperationHistoryDto;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.OperationType;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Запросы к истории операций кошельков (wallet_operations) через JDBC.
+ * <p>
+ * Таблица секционирована по месяцам по created_at. Первичный ключ (wallet_id, created_at, id) включает
+ * остальные столбцы (INCLUDE), поэтому страница истории читается только из индекса.
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class WalletHistoryRepository {
+    /**
+     * Префикс имени месячной секции, за ним следует месяц в формате {@link #PARTITION_MONTH}
+     */
+    private static final String PARTITION_PREFIX = "wallet_operations_p";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Запись операций одним запросом
+     * @param entries записи истории в порядке проведения операций
+     */
+    public void insert(List<WalletHistoryEntry> entries) {
+        int size = entries.size();
+        UUID[] walletIds = new UUID[size];
+        String[] types = new String[size];
+        Long[] amounts = new Long[size];
+        Long[] balances = new Long[size];
+        UUID[] counterpartyIds = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            WalletHistoryEntry entry = entries.get(i);
+            walletIds[i] = entry.walletId();
+            types[i] = entry.type().name();
+            amounts[i] = entry.amount();
+            balances[i] = entry.balance();
+            counterpartyIds[i] = entry.counterpartyId();
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO wallet_operations (wallet_id, type, amount, balance, counterparty_id, created_at)
+                    SELECT v.wallet_id, v.type, v.amount, v.balance, v.counterparty_id, clock_timestamp()
+                    FROM unnest(?::uuid[], ?::varchar[], ?::bigint[], ?::bigint[], ?::uuid[])
+                         AS v(wallet_id, type, amount, balance, counterparty_id)
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", walletIds));
+            statement.setArray(2, connection.createArrayOf("varchar", types));
+            statement.setArray(3, connection.createArrayOf("int8", amounts));
+            statement.setArray(4, connection.createArrayOf("int8", balances));
+            statement.setArray(5, connection.createArrayOf("uuid", counterpartyIds));
+            return statement;
+        });
+    }
+
+    /**
+     * Страница истории кошелька от новых операций к старым (keyset-пагинация по created_at, id)
+     * @param walletId кошелька
+     * @param beforeCreatedAt время последней операции предыдущей страницы, либо null для первой страницы
+     * @param beforeId ID последней операции предыдущей страницы
+     * @param limit размер страницы
+     * @return операции страницы
+     */
+    public List<WalletOperationHistoryDto> findPage(UUID walletId, LocalDateTime beforeCreatedAt, long beforeId, int limit) {
+        String after = beforeCreatedAt == null ? "" : "AND (created_at, id) < (?, ?)";
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    SELECT id, type, amount, balance, counterparty_id, created_at
+                    FROM wallet_operations
+                    WHERE wallet_id = ?
+                    %s
+                    ORDER BY created_at DESC, id DESC
+                    LIMIT ?
+                    """.formatted(after));
+            int index = 1;
+            statement.setObject(index++, walletId);
+            if (beforeCreatedAt != null) {
+                statement.setObject(index++, beforeCreatedAt);
+                statement.setLong(index++, beforeId);
+            }
+            statement.setInt(index, limit);
+            return statement;
+        }, (rs, rowNum) -> new WalletOperationHistoryDto(
+                rs.getLong(1),
+                OperationType.valueOf(rs.getString(2)),
+                MinorUnits.toDecimal(rs.getLong(3)),
+                MinorUnits.toDecimal(rs.getObject(4, Long.class)),
+                rs.getObject(5, UUID.class),
+                rs.getObject(6, LocalDateTime.class)));
+    }
+
+    /**
+     * Месячные секции истории, в том числе отсоединенные, но еще не удаленные
+     * @return секции по имени
+     */
+    public List<HistoryPartition> findPartitions() {
+        return jdbcTemplate.query("""
+                SELECT c.relname, i.inhrelid IS NOT NULL, COALESCE(i.inhdetachpending, false)
+                FROM pg_class c
+                LEFT JOIN pg_inherits i ON i.inhrelid = c.oid
+                WHERE c.relkind = 'r'
+                AND c.relnamespace = (SELECT oid FROM pg_namespace WHERE nspname = current_schema())
+                AND c.relname ~ ?
+                ORDER BY c.relname
+                """, (rs, rowNum) -> new HistoryPartition(
+                        YearMonth.parse(rs.getString(1).substring(PARTITION_PREFIX.length()), PARTITION_MONTH),
+                        rs.getBoolean(2),
+                        rs.getBoolean(3)),
+                "^" + PARTITION_PREFIX + "[0-9]{4}_[0-9]{2}$");
+    }
+
+    /**
+     * Создание секции за месяц, если ее нет
+     */
+    public void createPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF wallet_operations FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+    }
+
+    /**
+     * Отсоединение секции без блокировки вставок в остальные секции (DETACH ... CONCURRENTLY).
+     * Не выполняется внутри транзакции.
+     * @param finalize завершить отсоединение, прерванное на втором шаге
+     */
+    public void detachPartition(YearMonth month, boolean finalize) {
+        jdbcTemplate.execute("ALTER TABLE wallet_operations DETACH PARTITION %s %s"
+                .formatted(partitionName(month), finalize ? "FINALIZE" : "CONCURRENTLY"));
+    }
+
+    /**
+     * Удаление отсоединенной секции
+     */
+    public void dropPartition(YearMonth month) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(month));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_MONTH);
+    }
+
+    /**
+     * Месячная секция истории
+     * @param month месяц операций секции
+     * @param attached присоединена ли секция к wallet_operations
+     * @param detachPending отсоединение начато, но не завершено
+     */
+    public record HistoryPartition(YearMonth month, boolean attached, boolean detachPending) {
+    }
+}
@@ -0,0 +1,233 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.example.itktest.dto.WalletHoldDto;
+import ru.example.itktest.model.HoldStatus;
+import ru.example.itktest.model.MinorUnits;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Резервы средств кошельков (wallet_holds).
+ * <p>
+ * Резервирование переносит сумму из amount в held кошелька, поэтому amount - это доступный баланс, и все
+ * существующие проверки списаний учитывают резервы без изменений. Подтверждение уменьшает held, отмена
+ * и истечение возвращают сумму из held в amount. Каждый шаг - один запрос с проверкой состояния резерва
+ * в условии UPDATE, блокировки строк не удерживаются между шагами.
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class WalletHoldRepository {
+    private static final RowMapper<WalletHoldDto> HOLD_MAPPER = (rs, rowNum) -> new WalletHoldDto(
+            rs.getObject("id", UUID.class),
+            rs.getObject("wallet_id", UUID.class),
+            MinorUnits.toDecimal(rs.getLong("amount")),
+            HoldStatus.valueOf(rs.getString("status")),
+            rs.getObject("expires_at", LocalDateTime.class));
+
+    private static final RowMapper<WalletBalanceRow> BALANCE_MAPPER = (rs, rowNum) -> new WalletBalanceRow(
+            rs.getObject("id", UUID.class),
+            rs.getLong("amount"),
+            rs.getObject("updated_at", LocalDateTime.class));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Результат резервирования
+     * @param balance доступный баланс кошелька в копейках после резервирования, либо текущий, если средств недостаточно
+     * @param updatedAt время изменения кошелька
+     * @param expiresAt время истечения созданного резерва, либо null, если резерв не создан
+     */
+    public record HoldResult(long balance, LocalDateTime updatedAt, LocalDateTime expiresAt) {
+        public boolean applied() {
+            return expiresAt != null;
+        }
+    }
+
+    /**
+     * Атомарное резервирование суммы из строки кошелька.
+     * Если ее недостаточно, тот же запрос возвращает текущий баланс без резерва.
+     * @param holdId ID создаваемого резерва
+     * @param walletId кошелька
+     * @param amount сумма в копейках
+     * @param ttl время жизни резерва
+     * @return результат, либо пустой результат, если кошелек не найден
+     */
+    public Optional<HoldResult> hold(UUID holdId, UUID walletId, long amount, Duration ttl) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("holdId", holdId)
+                .addValue("walletId", walletId)
+                .addValue("amount", amount)
+                .addValue("ttl", ttl.toMillis() / 1000.0);
+        return jdbcTemplate.query("""
+                WITH updated AS (
+                    UPDATE wallets
+                    SET amount = amount - :amount,
+                        held = held + :amount,
+                        updated_at = clock_timestamp()
+                    WHERE id = :walletId
+                    AND amount >= :amount
+                    RETURNING id, amount, updated_at
+                ), inserted AS (
+                    INSERT INTO wallet_holds (id, wallet_id, amount, status, created_at, expires_at)
+                    SELECT :holdId, id, :amount, 'ACTIVE', localtimestamp, localtimestamp + make_interval(secs => :ttl)
+                    FROM updated
+                    RETURNING expires_at
+                )
+                SELECT w.amount + %1$s AS balance, w.updated_at, (SELECT expires_at FROM inserted) AS expires_at
+                FROM updated w
+                UNION ALL
+                SELECT w.amount + %1$s AS balance, w.updated_at, NULL AS expires_at
+                FROM wallets w
+                WHERE w.id = :walletId
+                AND NOT EXISTS (SELECT 1 FROM updated)
+                """.formatted(WalletSql.STRIPES_TOTAL), params, (rs, rowNum) -> new HoldResult(
+                        rs.getLong("balance"),
+                        rs.getObject("updated_at", LocalDateTime.class),
+                        rs.getObject("expires_at", LocalDateTime.class)))
+                .stream().findFirst();
+    }
+
+    /**
+     * Атомарное подтверждение активного резерва: зарезервированная сумма списывается из held.
+     * Резерв с истекшим сроком не подтверждается, даже если задача отмены истекших резервов еще не отменила его.
+     * @param holdId ID резерва
+     * @return подтвержденный резерв, либо пустой результат, если активного неистекшего резерва с таким ID нет
+     */
+    public Optional<WalletHoldDto> capture(UUID holdId) {
+        return jdbcTemplate.query("""
+                WITH hold AS (
+                    UPDATE wallet_holds
+                    SET status = 'CAPTURED',
+                        completed_at = clock_timestamp()
+                    WHERE id = :holdId
+                    AND status = 'ACTIVE'
+                    AND expires_at > localtimestamp
+                    RETURNING id, wallet_id, amount, status, expires_at
+                ), updated AS (
+                    UPDATE wallets w
+                    SET held = w.held - h.amount
+                    FROM hold h
+                    WHERE w.id = h.wallet_id
+                )
+                SELECT id, wallet_id, amount, status, expires_at
+                FROM hold
+                """, new MapSqlParameterSource("holdId", holdId), HOLD_MAPPER)
+                .stream().findFirst();
+    }
+
+    /**
+     * Атомарная отмена активного резерва: зарезервированная сумма возвращается в доступный баланс
+     * @param holdId ID резерва
+     * @return новый баланс кошелька, либо пустой результат, если активного резерва с таким ID нет
+     */
+    public Optional<WalletBalanceRow> release(UUID holdId) {
+        return jdbcTemplate.query("""
+                WITH hold AS (
+                    UPDATE wallet_holds
+                    SET status = 'RELEASED',
+                        completed_at = clock_timestamp()
+                    WHERE id = :holdId
+                    AND status = 'ACTIVE'
+                    RETURNING wallet_id, amount
+                )
+                UPDATE wallets w
+                SET amount = w.amount + h.amount,
+                    held = w.held - h.amount,
+                    updated_at = clock_timestamp()
+                FROM hold h
+                WHERE w.id = h.wallet_id
+                RETURNING w.id, w.amount + %s AS amount, w.updated_at
+                """.formatted(WalletSql.STRIPES_TOTAL), new MapSqlParameterSource("holdId", holdId), BALANCE_MAPPER)
+                .stream().findFirst();
+    }
+
+    /**
+     * Получение резерва
+     * @param holdId ID резерва
+     * @return резерв, либо пустой результат, если он не найден
+     */
+    public Optional<WalletHoldDto> findById(UUID holdId) {
+        return jdbcTemplate.query("""
+                SELECT id, wallet_id, amount, status, expires_at
+                FROM wallet_holds
+                WHERE id = :holdId
+                """, new MapSqlParameterSource("holdId", holdId), HOLD_MAPPER)
+                .stream().findFirst();
+    }
+
+    /**
+     * Перевод порции истекших резервов в состояние EXPIRED.
+     * Резервы, заблокированные параллельным подтверждением или отменой, пропускаются (SKIP LOCKED).
+     * Суммы нужно вернуть в доступный баланс через {@link #returnHeld(Map)} в той же транзакции.
+     * @param limit максимальное количество резервов
+     * @return суммы истекших резервов в копейках по ID кошелька
+     */
+    public Map<UUID, Long> expire(int limit) {
+        Map<UUID, Long> totals = new HashMap<>();
+        jdbcTemplate.query("""
+                WITH expired AS (
+                    SELECT id
+                    FROM wallet_holds
+                    WHERE status = 'ACTIVE'
+                    AND expires_at <= localtimestamp
+                    ORDER BY expires_at
+                    LIMIT :limit
+                    FOR UPDATE SKIP LOCKED
+                ), holds AS (
+                    UPDATE wallet_holds h
+                    SET status = 'EXPIRED',
+                        completed_at = clock_timestamp()
+                    FROM expired e
+                    WHERE h.id = e.id
+                    RETURNING h.wallet_id, h.amount
+                )
+                SELECT wallet_id, sum(amount)::bigint AS amount
+                FROM holds
+                GROUP BY wallet_id
+                """, new MapSqlParameterSource("limit", limit), rs -> {
+            totals.put(rs.getObject("wallet_id", UUID.class), rs.getLong("amount"));
+        });
+        return totals;
+    }
+
+    /**
+     * Возврат сумм завершенных резервов из held в доступный баланс.
+     * Кошельки сначала блокируются в порядке возрастания ID, как при переводах и пакетных операциях,
+     * поэтому возврат по нескольким кошелькам с ними не взаимоблокируется.
+     * @param amounts суммы в копейках по ID кошелька
+     * @return новые балансы кошельков
+     */
+    public List<WalletBalanceRow> returnHeld(Map<UUID, Long> amounts) {
+        if (amounts.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", amounts.keySet());
+        jdbcTemplate.query("SELECT id FROM wallets WHERE id IN (:ids) ORDER BY id FOR UPDATE", params, rs -> { });
+
+        List<WalletBalanceRow> rows = new ArrayList<>(amounts.size());
+        amounts.forEach((id, amount) -> rows.addAll(jdbcTemplate.query("""
+                UPDATE wallets w
+                SET amount = w.amount + :amount,
+                    held = w.held - :amount,
+                    updated_at = clock_timestamp()
+                WHERE w.id = :id
+                RETURNING w.id, w.amount + %s AS amount, w.updated_at
+                """.formatted(WalletSql.STRIPES_TOTAL), new MapSqlParameterSource("id", id).addValue("amount", amount),
+                BALANCE_MAPPER)));
+        return rows;
+    }
+}
@@ -0,0 +1,239 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.model.MinorUnits;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Запросы к кошелькам через JDBC в обход EntityManager
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class WalletJdbcRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Последовательное чтение всех кошельков курсором БД.
+     * Строки подгружаются порциями по fetchSize, поэтому память не зависит от размера таблицы.
+     * Должно вызываться в транзакции, иначе драйвер Postgres прочитает весь результат сразу.
+     * @param fetchSize размер порции
+     * @param consumer обработчик очередного кошелька
+     */
+    public void forEachWallet(int fetchSize, Consumer<WalletDto> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT w.id, w.amount + " + WalletSql.STRIPES_TOTAL + " FROM wallets w ORDER BY w.id",
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, rs -> {
+            consumer.accept(new WalletDto(rs.getObject(1, UUID.class), MinorUnits.toDecimal(rs.getLong(2))));
+        });
+    }
+
+    /**
+     * Создание кошельков одним запросом без EntityManager.
+     * Строки передаются массивами в unnest, поэтому запрос один на любое количество кошельков.
+     * @param ids новых кошельков
+     * @param amounts начальные балансы в копейках в порядке ids
+     * @return количество созданных кошельков
+     */
+    public int insertWallets(UUID[] ids, Long[] amounts) {
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO wallets (id, amount, created_at, updated_at)
+                    SELECT v.id, v.amount, now(), now()
+                    FROM unnest(?::uuid[], ?::bigint[]) AS v(id, amount)
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", ids));
+            statement.setArray(2, connection.createArrayOf("int8", amounts));
+            return statement;
+        });
+    }
+
+    /**
+     * Блокировка кошельков до конца транзакции (SELECT ... FOR UPDATE).
+     * Строки блокируются в порядке возрастания ID, поэтому конкурентные пакеты не взаимоблокируются.
+     * Части балансов заблокированных кошельков переносятся в строки кошельков, поэтому возвращаемый
+     * баланс можно целиком списывать и записывать через {@link #updateBalances(Map)}.
+     * @param ids кошельков
+     * @return текущие балансы найденных кошельков в копейках
+     */
+    public Map<UUID, Long> lockBalances(Collection<UUID> ids) {
+        Map<UUID, Long> balances = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    SELECT id, amount
+                    FROM wallets
+                    WHERE id = ANY(?)
+                    ORDER BY id
+                    FOR UPDATE
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", ids.toArray()));
+            return statement;
+        }, rs -> {
+            balances.put(rs.getObject(1, UUID.class), rs.getLong(2));
+        });
+        if (!balances.isEmpty()) {
+            sweepStripes(balances.keySet()).forEach((id, swept) -> balances.merge(id, swept, Long::sum));
+        }
+        return balances;
+    }
+
+    /**
+     * Перенос частей балансов в строки кошельков.
+     * Строки кошельков должны быть уже заблокированы текущей транзакцией: части блокируются после них,
+     * как и при любом другом списании, поэтому пополнения частей не взаимоблокируются со списаниями.
+     * @param ids кошельков
+     * @return перенесенные суммы по ID кошелька
+     */
+    private Map<UUID, Long> sweepStripes(Collection<UUID> ids) {
+        Map<UUID, Long> swept = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    WITH locked AS (
+                        SELECT wallet_id, stripe, amount
+                        FROM wallet_stripes
+                        WHERE wallet_id = ANY(?)
+                        AND amount > 0
+                        ORDER BY wallet_id, stripe
+                        FOR UPDATE
+                    ), cleared AS (
+                        UPDATE wallet_stripes s
+                        SET amount = 0
+                        FROM locked l
+                        WHERE s.wallet_id = l.wallet_id
+                        AND s.stripe = l.stripe
+                        RETURNING l.wallet_id, l.amount
+                    ), totals AS (
+                        SELECT wallet_id, sum(amount)::bigint AS amount
+                        FROM cleared
+                        GROUP BY wallet_id
+                    )
+                    UPDATE wallets w
+                    SET amount = w.amount + t.amount
+                    FROM totals t
+                    WHERE w.id = t.wallet_id
+                    RETURNING w.id, t.amount
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", ids.toArray()));
+            return statement;
+        }, rs -> {
+            swept.put(rs.getObject(1, UUID.class), rs.getLong(2));
+        });
+        return swept;
+    }
+
+    /**
+     * Суммы частей балансов кошельков
+     * @param ids кошельков
+     * @return суммы частей в копейках по ID кошелька (только для кошельков, у которых есть части)
+     */
+    public Map<UUID, Long> findStripeTotals(Collection<UUID> ids) {
+        Map<UUID, Long> totals = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    SELECT wallet_id, sum(amount)::bigint
+                    FROM wallet_stripes
+                    WHERE wallet_id = ANY(?)
+                    GROUP BY wallet_id
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", ids.toArray()));
+            return statement;
+        }, rs -> {
+            totals.put(rs.getObject(1, UUID.class), rs.getLong(2));
+        });
+        return totals;
+    }
+
+    /**
+     * Количество частей по всем кошелькам, баланс которых разбит на части
+     * @return количество частей по ID кошелька
+     */
+    public Map<UUID, Integer> findStripeCounts() {
+        Map<UUID, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT wallet_id, count(*) FROM wallet_stripes GROUP BY wallet_id", rs -> {
+            counts.put(rs.getObject(1, UUID.class), rs.getInt(2));
+        });
+        return counts;
+    }
+
+    /**
+     * Замена частей баланса кошелька пустыми частями.
+     * Строка кошелька должна быть заблокирована текущей транзакцией ({@link #lockBalances(Collection)}).
+     * Пополнения частей строку кошелька не блокируют, поэтому части удаляются тем же запросом, который
+     * переносит их суммы в строку кошелька: пополнение, проведенное после переноса частей при блокировке,
+     * не теряется.
+     * @param id кошелька
+     * @param count новое количество частей; 0 - убрать разбиение
+     * @return сумма в копейках, перенесенная из удаленных частей в строку кошелька
+     */
+    public long replaceStripes(UUID id, int count) {
+        Long moved = jdbcTemplate.queryForObject("""
+                WITH removed AS (
+                    DELETE FROM wallet_stripes
+                    WHERE wallet_id = ?
+                    RETURNING amount
+                ), total AS (
+                    SELECT COALESCE(sum(amount), 0)::bigint AS amount FROM removed
+                )
+                UPDATE wallets w
+                SET amount = w.amount + t.amount
+                FROM total t
+                WHERE w.id = ?
+                RETURNING t.amount
+                """, Long.class, id, id);
+        if (count > 0) {
+            jdbcTemplate.update("""
+                    INSERT INTO wallet_stripes (wallet_id, stripe, amount)
+                    SELECT ?, stripe, 0 FROM generate_series(0, ? - 1) AS stripe
+                    """, id, count);
+        }
+        return moved == null ? 0 : moved;
+    }
+
+    /**
+     * Запись балансов нескольких кошельков одним запросом
+     * @param balances новые балансы в копейках по ID кошелька
+     * @return записанные балансы
+     */
+    public List<WalletBalanceRow> updateBalances(Map<UUID, Long> balances) {
+        if (balances.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    UPDATE wallets w
+                    SET amount = v.amount,
+                        updated_at = clock_timestamp()
+                    FROM unnest(?::uuid[], ?::bigint[]) AS v(id, amount)
+                    WHERE w.id = v.id
+                    RETURNING w.id,
+                              w.amount +
+                    """ + WalletSql.STRIPES_TOTAL + """
+                              , w.updated_at
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", balances.keySet().toArray()));
+            statement.setArray(2, connection.createArrayOf("int8", balances.values().toArray()));
+            return statement;
+        }, (rs, rowNum) -> new WalletBalanceRow(
+                rs.getObject(1, UUID.class),
+                rs.getLong(2),
+                rs.getObject(3, LocalDateTime.class)));
+    }
+}
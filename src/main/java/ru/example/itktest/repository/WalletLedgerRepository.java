@@ -0,0 +1,156 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Журнал операций над кошельками (wallet_ledger) и снимки балансов (wallet_snapshots).
+ * <p>
+ * Строки журнала только добавляются. Каждая строка хранит идентификатор создавшей ее транзакции (tx_id),
+ * снимок хранит баланс по всем транзакциям с идентификатором меньше горизонта (horizon).
+ * Баланс кошелька - это снимок плюс сумма строк журнала начиная с горизонта снимка.
+ * Пока снимка нет, основой служит баланс из таблицы wallets.
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class WalletLedgerRepository {
+    /**
+     * Баланс кошелька :id по снимку и хвосту журнала
+     */
+    private static final String BALANCE = """
+            SELECT COALESCE(s.amount, w.amount) + COALESCE((
+                       SELECT sum(l.delta)::bigint
+                       FROM wallet_ledger l
+                       WHERE l.wallet_id = w.id
+                         AND l.tx_id >= COALESCE(s.horizon, '0'::xid8)
+                   ), 0) AS amount
+            FROM wallets w
+            LEFT JOIN wallet_snapshots s ON s.wallet_id = w.id
+            WHERE w.id = :id
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Получение баланса кошелька
+     * @param id кошелька
+     * @return баланс в копейках, либо пустой результат, если кошелька нет
+     */
+    public Optional<Long> findBalance(UUID id) {
+        return jdbcTemplate.queryForList(BALANCE, new MapSqlParameterSource("id", id), Long.class)
+                .stream().findFirst();
+    }
+
+    /**
+     * Запись пополнения в журнал.
+     * Строка только добавляется, поэтому конкурентные пополнения одного кошелька не ждут друг друга.
+     * @param id кошелька
+     * @param amount сумма пополнения в копейках
+     * @return баланс с учетом пополнения по данным на момент запроса, либо пустой результат, если кошелька нет
+     */
+    public Optional<Long> deposit(UUID id, long amount) {
+        return jdbcTemplate.queryForList("""
+                WITH inserted AS (
+                    INSERT INTO wallet_ledger (wallet_id, delta, created_at)
+                    SELECT id, :amount, clock_timestamp() FROM wallets WHERE id = :id
+                    RETURNING wallet_id
+                )
+                SELECT b.amount + :amount
+                FROM (""" + BALANCE + """
+                ) b
+                WHERE EXISTS (SELECT 1 FROM inserted)
+                """, params(id, amount), Long.class)
+                .stream().findFirst();
+    }
+
+    /**
+     * Запись списания в журнал, если средств достаточно.
+     * Перед проверкой берется транзакционная advisory-блокировка кошелька, поэтому списания
+     * одного кошелька проверяются по очереди, а пополнения их не ждут. Проверка выполняется
+     * отдельным запросом после блокировки, чтобы видеть все списания, зафиксированные до нее.
+     * @param id кошелька
+     * @param amount сумма списания в копейках
+     * @return баланс после списания, либо текущий баланс, если средств недостаточно;
+     * пустой результат, если кошелька нет
+     */
+    public Optional<LedgerBalance> withdraw(UUID id, long amount) {
+        MapSqlParameterSource params = params(id, amount);
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(hashtextextended(:id::text, 0))", params, rs -> { });
+        return jdbcTemplate.query("""
+                WITH balance AS (""" + BALANCE + """
+                ), inserted AS (
+                    INSERT INTO wallet_ledger (wallet_id, delta, created_at)
+                    SELECT :id, -:amount, clock_timestamp() FROM balance WHERE amount >= :amount
+                    RETURNING wallet_id
+                )
+                SELECT amount - :amount AS amount, true AS applied FROM balance
+                WHERE EXISTS (SELECT 1 FROM inserted)
+                UNION ALL
+                SELECT amount, false FROM balance
+                WHERE NOT EXISTS (SELECT 1 FROM inserted)
+                """, params, (rs, rowNum) -> new LedgerBalance(rs.getLong(1), rs.getBoolean(2)))
+                .stream().findFirst();
+    }
+
+    /**
+     * Перенос хвоста журнала в снимки.
+     * Горизонтом нового снимка становится xmin текущего снимка БД: все транзакции с меньшим
+     * идентификатором уже завершены, поэтому строки журнала до горизонта больше не появятся.
+     * Баланс снимка дублируется в wallets.amount, чтобы списки кошельков отставали не больше
+     * чем на один проход.
+     * @param limit максимальное количество кошельков за проход
+     * @return количество обновленных снимков
+     */
+    public int compact(int limit) {
+        return jdbcTemplate.update("""
+                WITH horizon AS (
+                    SELECT pg_snapshot_xmin(pg_current_snapshot()) AS xid
+                ), tail AS (
+                    SELECT l.wallet_id, sum(l.delta)::bigint AS delta
+                    FROM wallet_ledger l
+                    LEFT JOIN wallet_snapshots s ON s.wallet_id = l.wallet_id
+                    WHERE l.tx_id >= COALESCE(s.horizon, '0'::xid8)
+                      AND l.tx_id < (SELECT xid FROM horizon)
+                    GROUP BY l.wallet_id
+                    LIMIT :limit
+                ), snapshots AS (
+                    INSERT INTO wallet_snapshots (wallet_id, amount, horizon, created_at)
+                    SELECT t.wallet_id, COALESCE(s.amount, w.amount) + t.delta, (SELECT xid FROM horizon), localtimestamp
+                    FROM tail t
+                    JOIN wallets w ON w.id = t.wallet_id
+                    LEFT JOIN wallet_snapshots s ON s.wallet_id = t.wallet_id
+                    ON CONFLICT (wallet_id) DO UPDATE
+                        SET amount = EXCLUDED.amount, horizon = EXCLUDED.horizon, created_at = EXCLUDED.created_at
+                    RETURNING wallet_id, amount
+                )
+                UPDATE wallets w
+                SET amount = s.amount, updated_at = clock_timestamp()
+                FROM snapshots s
+                WHERE w.id = s.wallet_id
+                """, new MapSqlParameterSource("limit", limit));
+    }
+
+    /**
+     * Попытка захватить право на компактизацию до конца транзакции,
+     * чтобы снимки одновременно переносил только один узел
+     * @return true, если право получено
+     */
+    public boolean tryLockCompaction() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtextextended('wallet_ledger_compaction', 0))",
+                new MapSqlParameterSource(), Boolean.class));
+    }
+
+    private static MapSqlParameterSource params(UUID id, long amount) {
+        return new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("amount", amount);
+    }
+}
@@ -1,13 +1,16 @@
 package ru.example.itktest.repository;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.example.itktest.model.Wallet;
 
-import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -16,31 +19,138 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     Optional<Wallet> findById(UUID id);
 
     /**
-     * Атомарный SQL запрос на внесение денежной суммы
+     * Первая страница кошельков в порядке возрастания ID
+     * @param limit размер страницы
+     * @return кошельки страницы
+     */
+    List<Wallet> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Страница кошельков, следующих за указанным ID (keyset-пагинация по первичному ключу)
+     * @param id последний ID предыдущей страницы
+     * @param limit размер страницы
+     * @return кошельки страницы
+     */
+    List<Wallet> findByIdGreaterThanOrderByIdAsc(UUID id, Limit limit);
+
+    /**
+     * Получение кошелька с блокировкой строки (SELECT ... FOR UPDATE)
+     * @param id кошелька
+     * @return кошелек, заблокированный до конца транзакции
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.id = :id")
+    Optional<Wallet> findByIdForUpdate(@Param("id") UUID id);
+
+    /**
+     * Получение баланса кошелька в транзакции только для чтения.
+     * Баланс кошелька - это сумма в строке кошелька плюс суммы его частей в wallet_stripes.
+     * @param id кошелька
+     * @return текущий баланс, либо пустой результат, если кошелек не найден
+     */
+    @Transactional(readOnly = true)
+    @Query(nativeQuery = true, value = """
+        SELECT w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+               AS amount,
+               w.updated_at AS "updatedAt", true AS applied
+        FROM wallets w
+        WHERE w.id = :id
+    """)
+    Optional<WalletBalanceView> findBalanceById(@Param("id") UUID id);
+
+    /**
+     * Запись баланса, рассчитанного приложением под блокировкой строки
+     * @param id кошелька
+     * @param amount новый баланс в копейках
+     * @return записанный баланс
+     */
+    @Query(nativeQuery = true, value = """
+        UPDATE wallets w
+        SET amount = :amount,
+            updated_at = clock_timestamp()
+        WHERE w.id = :id
+        RETURNING w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+                  AS amount, w.updated_at AS "updatedAt", true AS applied
+    """)
+    WalletBalanceView setAmount(@Param("id") UUID id, @Param("amount") long amount);
+
+    /**
+     * Атомарный SQL запрос на внесение денежной суммы.
+     * Новый баланс возвращается тем же запросом (UPDATE ... RETURNING).
+     * @param id кошелька
+     * @param amount сумма в копейках
+     * @return новый баланс, либо пустой результат, если кошелек не найден
+     */
+    @Query(nativeQuery = true, value = """
+        UPDATE wallets w
+        SET amount = w.amount + :amount,
+            updated_at = clock_timestamp()
+        WHERE w.id = :id
+        RETURNING w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+                  AS amount, w.updated_at AS "updatedAt", true AS applied
+    """)
+    Optional<WalletBalanceView> deposit(@Param("id") UUID id, @Param("amount") long amount);
+
+    /**
+     * Атомарный SQL запрос на снятие денежной суммы.
+     * Списание проводится только из суммы в строке кошелька. Если ее недостаточно, тот же запрос возвращает
+     * текущий баланс с учетом частей с признаком applied = false.
      * @param id кошелька
-     * @param amount сумма
-     * @return количество обновленных строк
+     * @param amount сумма в копейках
+     * @return новый или текущий баланс, либо пустой результат, если кошелек не найден
      */
-    @Modifying
-    @Query("""
-        UPDATE Wallet w
-        SET w.amount = w.amount + :amount
+    @Query(nativeQuery = true, value = """
+        WITH updated AS (
+            UPDATE wallets
+            SET amount = amount - :amount,
+                updated_at = clock_timestamp()
+            WHERE id = :id
+            AND amount >= :amount
+            RETURNING id, amount, updated_at
+        )
+        SELECT w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+               AS amount,
+               w.updated_at AS "updatedAt", true AS applied
+        FROM updated w
+        UNION ALL
+        SELECT w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+               AS amount,
+               w.updated_at AS "updatedAt", false AS applied
+        FROM wallets w
         WHERE w.id = :id
+        AND NOT EXISTS (SELECT 1 FROM updated)
     """)
-    int deposit(@Param("id") UUID id, @Param("amount") BigDecimal amount);
+    Optional<WalletBalanceView> withdraw(@Param("id") UUID id, @Param("amount") long amount);
 
     /**
-     * Атомарный SQL запрос на снятие денежной суммы
+     * Атомарный SQL запрос на внесение денежной суммы в одну из частей баланса кошелька.
+     * Строка кошелька не изменяется, поэтому пополнения разных частей не ждут друг друга.
      * @param id кошелька
-     * @param amount сумма
-     * @return количество обновленных строк
+     * @param stripe номер части
+     * @param amount сумма в копейках
+     * @return новый баланс по данным на момент запроса, либо пустой результат, если такой части нет
      */
-    @Modifying
-    @Query("""
-        UPDATE Wallet w
-        SET w.amount = w.amount - :amount
+    @Query(nativeQuery = true, value = """
+        WITH updated AS (
+            UPDATE wallet_stripes
+            SET amount = amount + :amount
+            WHERE wallet_id = :id
+            AND stripe = :stripe
+            RETURNING wallet_id
+        )
+        SELECT w.amount +
+    """ + WalletSql.STRIPES_TOTAL + """
+               + :amount AS amount,
+               clock_timestamp() AS "updatedAt", true AS applied
+        FROM wallets w
         WHERE w.id = :id
-        AND w.amount >= :amount
+        AND EXISTS (SELECT 1 FROM updated)
     """)
-    int withdraw(@Param("id") UUID id, @Param("amount") BigDecimal amount);
+    Optional<WalletBalanceView> depositToStripe(@Param("id") UUID id, @Param("stripe") int stripe,
+                                                @Param("amount") long amount);
 }
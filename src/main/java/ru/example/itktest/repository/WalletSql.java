@@ -0,0 +1,16 @@
+package ru.example.itktest.repository;
+
+/**
+ * Общие фрагменты SQL запросов к кошелькам
+ */
+final class WalletSql {
+    /**
+     * Сумма частей баланса кошелька w из wallet_stripes.
+     * Баланс кошелька - это w.amount плюс эта сумма; запросы обращаются к строке кошелька через псевдоним w.
+     */
+    static final String STRIPES_TOTAL =
+            "COALESCE((SELECT sum(s.amount)::bigint FROM wallet_stripes s WHERE s.wallet_id = w.id), 0)";
+
+    private WalletSql() {
+    }
+}
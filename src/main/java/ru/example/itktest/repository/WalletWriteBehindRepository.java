@@ -0,0 +1,98 @@
+package ru.example.itktest.repository;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Применение журнала отложенной записи к кошелькам.
+ * <p>
+ * Номер последней примененной записи журнала хранится в wallet_journal_state и обновляется в той же
+ * транзакции, что и балансы, поэтому после перезапуска повторно применяются только записи с большими номерами.
+ */
+@Timed("wallet.repository.invocations")
+@Repository
+@RequiredArgsConstructor
+public class WalletWriteBehindRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Баланс кошелька и номер последней примененной записи журнала, прочитанные одним запросом
+     * @param amount баланс в копейках с учетом частей
+     * @param appliedSeq номер последней примененной записи журнала
+     */
+    public record JournalBalance(long amount, long appliedSeq) {
+    }
+
+    /**
+     * Номер последней примененной записи журнала
+     * @param journalId ID журнала
+     * @return номер записи, либо 0, если записи журнала еще не применялись
+     */
+    public long findAppliedSeq(UUID journalId) {
+        return jdbcTemplate.query("SELECT last_seq FROM wallet_journal_state WHERE journal_id = ?",
+                        (rs, rowNum) -> rs.getLong(1), journalId)
+                .stream().findFirst().orElse(0L);
+    }
+
+    /**
+     * Баланс кошелька вместе с номером последней примененной записи журнала из одного снимка БД
+     * @param id кошелька
+     * @param journalId ID журнала
+     * @return баланс, либо пустой результат, если кошелек не найден
+     */
+    public Optional<JournalBalance> findBalance(UUID id, UUID journalId) {
+        return jdbcTemplate.query("""
+                        SELECT w.amount +
+                        """ + WalletSql.STRIPES_TOTAL + """
+                               , COALESCE((SELECT j.last_seq FROM wallet_journal_state j WHERE j.journal_id = ?), 0)
+                        FROM wallets w
+                        WHERE w.id = ?
+                        """, (rs, rowNum) -> new JournalBalance(rs.getLong(1), rs.getLong(2)), journalId, id)
+                .stream().findFirst();
+    }
+
+    /**
+     * Зачисление сумм записей журнала и сохранение номера последней примененной записи.
+     * Должно вызываться в транзакции. Кошельки блокируются в порядке возрастания ID,
+     * как при переводах и пакетных операциях.
+     * @param journalId ID журнала
+     * @param lastSeq номер последней записи в totals
+     * @param totals суммы пополнений в копейках по ID кошелька
+     */
+    public void apply(UUID journalId, long lastSeq, Map<UUID, Long> totals) {
+        if (!totals.isEmpty()) {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT id FROM wallets WHERE id = ANY(?) ORDER BY id FOR UPDATE");
+                statement.setArray(1, connection.createArrayOf("uuid", totals.keySet().toArray()));
+                return statement;
+            }, rs -> { });
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement("""
+                        UPDATE wallets w
+                        SET amount = w.amount + v.amount,
+                            updated_at = clock_timestamp()
+                        FROM unnest(?::uuid[], ?::bigint[]) AS v(id, amount)
+                        WHERE w.id = v.id
+                        """);
+                statement.setArray(1, connection.createArrayOf("uuid", totals.keySet().toArray()));
+                statement.setArray(2, connection.createArrayOf("int8", totals.values().toArray()));
+                return statement;
+            });
+        }
+        jdbcTemplate.update("""
+                INSERT INTO wallet_journal_state (journal_id, last_seq, updated_at)
+                VALUES (?, ?, clock_timestamp())
+                ON CONFLICT (journal_id) DO UPDATE
+                SET last_seq = EXCLUDED.last_seq,
+                    updated_at = EXCLUDED.updated_at
+                """, journalId, lastSeq);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.example.itktest.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.example.itktest.dto.HotWalletDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Оценка самых часто используемых кошельков в ограниченной памяти (алгоритм Space-Saving).
+ * <p>
+ * Хранится не больше capacity счетчиков в куче по возрастанию. Новый кошелек при заполненной куче
+ * вытесняет кошелек с наименьшим счетчиком и наследует его значение как погрешность, поэтому любой кошелек,
+ * на который пришлось больше 1/capacity всех операций, гарантированно присутствует в результате.
+ * Если структура занята другим потоком, обращение не учитывается: счетчик не должен становиться
+ * местом конкуренции для горячих кошельков, а пропуски не зависят от кошелька.
+ */
+@Component
+public class HotWalletTracker {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int capacity;
+    private final UUID[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<UUID, Integer> positions;
+    private int size;
+
+    public HotWalletTracker(@Value("${wallet.metrics.hot-wallets.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+        this.keys = new UUID[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Учет операции над кошельком
+     * @param walletId ID кошелька
+     */
+    public void offer(UUID walletId) {
+        if (walletId == null || !lock.tryLock()) {
+            return;
+        }
+        try {
+            Integer position = positions.get(walletId);
+            if (position != null) {
+                counts[position]++;
+                siftDown(position);
+            } else if (size < capacity) {
+                keys[size] = walletId;
+                counts[size] = 1;
+                errors[size] = 0;
+                positions.put(walletId, size);
+                siftUp(size++);
+            } else {
+                positions.remove(keys[0]);
+                keys[0] = walletId;
+                errors[0] = counts[0];
+                counts[0]++;
+                positions.put(walletId, 0);
+                siftDown(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Самые часто используемые кошельки
+     * @param limit количество кошельков, не больше capacity
+     * @return кошельки по убыванию оценки количества операций
+     */
+    public List<HotWalletDto> top(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Количество кошельков должно быть положительным: " + limit);
+        }
+        limit = Math.min(limit, capacity);
+        List<HotWalletDto> result = new ArrayList<>();
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                result.add(new HotWalletDto(keys[i], counts[i], errors[i]));
+            }
+        } finally {
+            lock.unlock();
+        }
+        result.sort(Comparator.comparingLong(HotWalletDto::count).reversed());
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Сброс счетчиков, например для оценки за новый интервал
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            positions.clear();
+            for (int i = 0; i < size; i++) {
+                keys[i] = null;
+            }
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[i] <= counts[smallest]) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        UUID key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        long error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+        positions.put(keys[a], a);
+        positions.put(keys[b], b);
+    }
+}
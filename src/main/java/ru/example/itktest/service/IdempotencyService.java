@@ -0,0 +1,161 @@
+package ru.example.itktest.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.IdempotencyKeyRepository;
+import ru.example.itktest.repository.IdempotencyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Сервис ключей идемпотентности операций над кошельками.
+ * <p>
+ * Ключ захватывается в той же транзакции, что и UPDATE кошелька, а результат операции сохраняется вместе с ним.
+ * Повторный запрос с тем же ключом получает сохраненный результат и не затрагивает строку кошелька.
+ * Недавно завершенные ключи дополнительно хранятся в ограниченном кэше внутри приложения,
+ * поэтому повторы на том же узле не обращаются к БД.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+    /**
+     * Максимальная длина ключа
+     */
+    public static final int MAX_KEY_LENGTH = 128;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Cache<String, IdempotencyRecord> completed;
+    private final Duration ttl;
+
+    @Value("${wallet.idempotency.purge-batch-size:1000}")
+    private int purgeBatchSize;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              @Value("${wallet.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${wallet.idempotency.cache-size:100000}") long cacheSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.ttl = ttl;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Поиск результата среди недавно завершенных операций без обращения к БД
+     * @param key ключ идемпотентности
+     * @param dto повторяемая операция
+     * @return сохраненный результат, либо null
+     */
+    public WalletDto findCompleted(String key, WalletOperationDto dto) {
+        validateKey(key);
+        IdempotencyRecord record = completed.getIfPresent(key);
+        return record == null ? null : toResult(record, dto);
+    }
+
+    /**
+     * Захват ключа в текущей транзакции
+     * @param key ключ идемпотентности
+     * @param dto операция
+     * @return сохраненный результат, если ключ уже использован; пустой результат, если ключ захвачен
+     */
+    public Optional<WalletDto> claim(String key, WalletOperationDto dto) {
+        if (idempotencyKeyRepository.claim(key, dto.getId(), fingerprint(dto))) {
+            return Optional.empty();
+        }
+        log.debug("Повторный запрос с ключом идемпотентности {}", key);
+        return idempotencyKeyRepository.find(key).map(record -> toResult(record, dto));
+    }
+
+    /**
+     * Сохранение результата операции для захваченного ключа в текущей транзакции
+     * @param key ключ идемпотентности
+     * @param dto операция
+     * @param result результат операции
+     */
+    public void complete(String key, WalletOperationDto dto, WalletDto result) {
+        idempotencyKeyRepository.complete(key, MinorUnits.of(result.getAmount()));
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(key, dto, result);
+            }
+        });
+    }
+
+    /**
+     * Сохранение результата зафиксированной операции в кэше завершенных ключей
+     * @param key ключ идемпотентности
+     * @param dto операция
+     * @param result результат операции
+     */
+    void remember(String key, WalletOperationDto dto, WalletDto result) {
+        completed.put(key, new IdempotencyRecord(result.getId(), fingerprint(dto), MinorUnits.of(result.getAmount())));
+    }
+
+    /**
+     * Удаление ключей старше срока хранения
+     */
+    @Scheduled(fixedDelayString = "${wallet.idempotency.purge-interval:PT1M}")
+    public void purgeExpired() {
+        LocalDateTime before = LocalDateTime.now().minus(ttl);
+        int deleted;
+        int total = 0;
+        do {
+            deleted = idempotencyKeyRepository.deleteExpired(before, purgeBatchSize);
+            total += deleted;
+        } while (deleted == purgeBatchSize);
+
+        if (total > 0) {
+            log.debug("Удалено {} устаревших ключей идемпотентности", total);
+        }
+    }
+
+    private void validateKey(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidRequestException("Ключ идемпотентности должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+    }
+
+    /**
+     * Сохраненный результат отдается только для той же самой операции
+     */
+    WalletDto toResult(IdempotencyRecord record, WalletOperationDto dto) {
+        if (!MessageDigest.isEqual(record.requestDigest(), fingerprint(dto)) || !record.walletId().equals(dto.getId())) {
+            throw new InvalidRequestException("Ключ идемпотентности уже использован для другой операции");
+        }
+        return new WalletDto(record.walletId(), MinorUnits.toDecimal(record.amount()));
+    }
+
+    /**
+     * Отпечаток операции: SHA-256 от строки id|type|сумма в копейках|targetId.
+     * Не зависит от JVM, поэтому сравнивается с отпечатками, сохраненными другими узлами и до перезапуска.
+     */
+    static byte[] fingerprint(WalletOperationDto dto) {
+        String request = dto.getId()
+                + "|" + dto.getType().name()
+                + "|" + MinorUnits.of(dto.getAmount())
+                + "|" + (dto.getTargetId() == null ? "" : dto.getTargetId());
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
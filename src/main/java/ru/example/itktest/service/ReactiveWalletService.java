@@ -0,0 +1,269 @@
+package ru.example.itktest.service;
+
+import io.r2dbc.spi.R2dbcException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.example.itktest.dto.WalletBalanceDto;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.dto.WalletPageDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.repository.ReactiveWalletRepository;
+import ru.example.itktest.repository.WalletBalanceView;
+import ru.example.itktest.repository.WalletHistoryEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Неблокирующий сервис для манипуляции электронным кошельком (профиль reactive).
+ * <p>
+ * Повторяет логику {@link WalletService} поверх R2DBC: операции проводятся в реактивной транзакции,
+ * события об изменении баланса публикуются после ее фиксации. Режим журнала операций не поддерживается,
+ * объединение операций и кэш балансов в этом профиле не используются.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveWalletService {
+    private final ReactiveWalletRepository walletRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IdempotencyService idempotencyService;
+    private final WalletStripeService stripeService;
+    private final WalletLedgerService ledgerService;
+    private final WalletChangeNotifier changeNotifier;
+    private final WalletMetrics walletMetrics;
+    private final WalletHistoryService historyService;
+
+    @Value("${wallet.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${wallet.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${wallet.stream.fetch-size:1000}")
+    private int streamFetchSize;
+
+    @PostConstruct
+    void checkConfiguration() {
+        if (ledgerService.isEnabled()) {
+            throw new IllegalStateException("Режим журнала операций не поддерживается профилем reactive");
+        }
+    }
+
+    /**
+     * Создание нового кошелька
+     * @return созданный кошелек
+     */
+    public Mono<WalletDto> createWallet() {
+        return walletRepository.create()
+                .doOnNext(wallet -> log.info("Кошелек успешно создан с ID: {}", wallet.getId()));
+    }
+
+    /**
+     * Проведение операции над кошельком, при наличии ключа идемпотентности - не больше одного раза
+     * (см. {@link WalletService#walletOperation(WalletOperationDto, String)})
+     * @param dto с типом операции и вносимой/снимаемой суммой
+     * @param idempotencyKey ключ идемпотентности, либо null
+     * @return обновленный кошелек (для перевода - кошелек отправителя)
+     */
+    public Mono<WalletDto> walletOperation(WalletOperationDto dto, String idempotencyKey) {
+        return walletMetrics.record(dto, Mono.defer(() -> execute(dto, idempotencyKey)));
+    }
+
+    private Mono<WalletDto> execute(WalletOperationDto dto, String idempotencyKey) {
+        List<WalletBalanceChangedEvent> events = new ArrayList<>(2);
+        if (idempotencyKey == null) {
+            return applyOperation(dto, events)
+                    .as(transactionalOperator::transactional)
+                    .flatMap(updated -> publish(events).thenReturn(updated));
+        }
+
+        WalletDto completed = idempotencyService.findCompleted(idempotencyKey, dto);
+        if (completed != null) {
+            return Mono.just(completed);
+        }
+
+        return walletRepository.claimIdempotencyKey(idempotencyKey, dto.getId(), IdempotencyService.fingerprint(dto))
+                .flatMap(claimed -> claimed
+                        ? applyOperation(dto, events).flatMap(updated -> walletRepository
+                                .completeIdempotencyKey(idempotencyKey, MinorUnits.of(updated.getAmount()))
+                                .thenReturn(updated))
+                        : walletRepository.findIdempotencyKey(idempotencyKey)
+                                .map(record -> idempotencyService.toResult(record, dto)))
+                .as(transactionalOperator::transactional)
+                .flatMap(updated -> {
+                    idempotencyService.remember(idempotencyKey, dto, updated);
+                    return publish(events).thenReturn(updated);
+                });
+    }
+
+    /**
+     * Проведение одиночной операции над кошельком в текущей транзакции
+     * @param events события, публикуемые после фиксации транзакции
+     */
+    private Mono<WalletDto> applyOperation(WalletOperationDto dto, List<WalletBalanceChangedEvent> events) {
+        UUID id = dto.getId();
+        long amount = MinorUnits.of(dto.getAmount());
+        return switch (dto.getType()) {
+            case WITHDRAW -> withdraw(id, amount).flatMap(result -> applied(id, OperationType.WITHDRAW, amount, result, events));
+            case DEPOSIT -> deposit(id, amount).flatMap(result -> applied(id, OperationType.DEPOSIT, amount, result, events));
+            case TRANSFER -> transfer(id, dto.getTargetId(), amount, events);
+        };
+    }
+
+    /**
+     * Пополнение в строку кошелька или в часть баланса.
+     * Переполнение BIGINT в БД переводится в ошибку запроса, как у {@link MinorUnits#add}.
+     */
+    private Mono<WalletBalanceView> deposit(UUID id, long amount) {
+        Mono<WalletBalanceView> row = Mono.defer(() -> walletRepository.deposit(id, amount))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException(id)));
+        int stripe = stripeService.pickStripe(id);
+        // если часть удалена переразбиением на другом узле, пополнение проводится через строку кошелька
+        Mono<WalletBalanceView> result = stripe < 0 ? row : walletRepository.depositToStripe(id, stripe, amount).switchIfEmpty(row);
+        return result.onErrorMap(ReactiveWalletService::isOutOfRange, e -> new InvalidRequestException(MinorUnits.OVERFLOW));
+    }
+
+    private static boolean isOutOfRange(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbc && MinorUnits.OUT_OF_RANGE_SQL_STATE.equals(r2dbc.getSqlState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<WalletBalanceView> withdraw(UUID id, long amount) {
+        Mono<WalletBalanceView> row = Mono.defer(() -> walletRepository.withdraw(id, amount))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException(id)));
+        return row.flatMap(result -> !result.getApplied() && result.getAmount() >= amount
+                // средств хватает только с учетом частей баланса
+                ? walletRepository.lockBalances(List.of(id)).then(row)
+                : Mono.just(result));
+    }
+
+    private Mono<WalletDto> applied(UUID id, OperationType type, long amount, WalletBalanceView result,
+                                    List<WalletBalanceChangedEvent> events) {
+        if (!result.getApplied()) {
+            throw new InsufficientFundsException(id, result.getAmount(), amount);
+        }
+        events.add(WalletBalanceChangedEvent.local(id, result.getAmount(), result.getUpdatedAt()));
+        WalletHistoryEntry entry = type == OperationType.DEPOSIT
+                ? WalletHistoryEntry.deposit(id, amount, result.getAmount())
+                : WalletHistoryEntry.withdraw(id, amount, result.getAmount());
+        return record(List.of(entry))
+                .thenReturn(WalletDto.builder().id(id).amount(MinorUnits.toDecimal(result.getAmount())).build());
+    }
+
+    /**
+     * Перевод между кошельками в текущей транзакции с блокировкой обоих кошельков в порядке ID
+     */
+    private Mono<WalletDto> transfer(UUID fromId, UUID toId, long amount, List<WalletBalanceChangedEvent> events) {
+        return walletRepository.lockBalances(List.of(fromId, toId)).flatMap(balances -> {
+            Long fromBalance = balances.get(fromId);
+            if (fromBalance == null) {
+                return Mono.error(new WalletNotFoundException(fromId));
+            }
+            Long toBalance = balances.get(toId);
+            if (toBalance == null) {
+                return Mono.error(new WalletNotFoundException(toId));
+            }
+            if (fromBalance < amount) {
+                return Mono.error(new InsufficientFundsException(fromId, fromBalance, amount));
+            }
+
+            long debited = fromBalance - amount;
+            long credited = MinorUnits.add(toBalance, amount);
+            return Flux.concat(
+                            walletRepository.setAmount(fromId, debited),
+                            walletRepository.setAmount(toId, credited))
+                    .doOnNext(row -> events.add(WalletBalanceChangedEvent.local(row.id(), row.amount(), row.updatedAt())))
+                    .then(record(WalletHistoryEntry.transfer(fromId, toId, amount, debited, credited)))
+                    .then(Mono.fromSupplier(() -> WalletDto.builder().id(fromId).amount(MinorUnits.toDecimal(debited)).build()));
+        });
+    }
+
+    /**
+     * Запись операций в историю в текущей транзакции
+     */
+    private Mono<Void> record(List<WalletHistoryEntry> entries) {
+        return historyService.isEnabled() ? walletRepository.insertOperations(entries) : Mono.empty();
+    }
+
+    /**
+     * Публикация событий после фиксации транзакции.
+     * Отправка межузловых уведомлений блокирующая, поэтому при включенных уведомлениях
+     * события публикуются вне потоков обработки запросов.
+     */
+    private Mono<Void> publish(List<WalletBalanceChangedEvent> events) {
+        if (events.isEmpty()) {
+            return Mono.empty();
+        }
+        Mono<Void> publish = Mono.fromRunnable(() -> events.forEach(eventPublisher::publishEvent));
+        return changeNotifier.isEnabled() ? publish.subscribeOn(Schedulers.boundedElastic()) : publish;
+    }
+
+    /**
+     * Получение баланса кошелька
+     * @param id кошелька
+     * @return баланс кошелька
+     */
+    public Mono<WalletBalanceDto> getBalance(UUID id) {
+        return walletRepository.findBalanceById(id)
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException(id)))
+                .map(balance -> new WalletBalanceDto(MinorUnits.toDecimal(balance.getAmount())));
+    }
+
+    /**
+     * Постраничное получение кошельков (см. {@link WalletService#getPage(String, Integer)})
+     */
+    public Mono<WalletPageDto> getPage(String cursor, Integer limit) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size < 1 || size > maxPageSize) {
+            return Mono.error(new InvalidRequestException("Размер страницы должен быть от 1 до " + maxPageSize));
+        }
+        UUID after;
+        try {
+            after = cursor == null ? null : WalletService.decodeCursor(cursor);
+        } catch (InvalidRequestException e) {
+            return Mono.error(e);
+        }
+
+        // запрашивается на одну запись больше, чтобы узнать, есть ли следующая страница
+        return walletRepository.findPage(after, size + 1)
+                .collectList()
+                .map(wallets -> {
+                    if (wallets.size() <= size) {
+                        return new WalletPageDto(wallets, null);
+                    }
+                    List<WalletDto> items = wallets.subList(0, size);
+                    return new WalletPageDto(items, WalletService.encodeCursor(items.get(size - 1).getId()));
+                });
+    }
+
+    /**
+     * Потоковая выгрузка всех кошельков
+     * @return все кошельки в порядке возрастания ID
+     */
+    public Flux<WalletDto> streamAll() {
+        return walletRepository.findAll(streamFetchSize);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.example.itktest.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Ограниченный кэш балансов кошельков внутри приложения.
+ * <p>
+ * Заполняется при чтении (read-through) и обновляется новым балансом после фиксации
+ * каждой операции (write-through). Изменения, проведенные на других узлах, приходят как
+ * удаленные события и удаляют запись из кэша, как и события без нового баланса и события
+ * по кошелькам, баланс которых разбит на части. В режиме журнала отложенной записи баланс,
+ * посчитанный синхронной операцией, не учитывает неперенесенные пополнения, поэтому события
+ * тоже только удаляют запись.
+ */
+@Slf4j
+@Component
+public class WalletBalanceCache {
+    private final boolean enabled;
+    private final Cache<UUID, CachedBalance> cache;
+    private final WalletStripeService stripeService;
+    private final boolean journalEnabled;
+
+    public WalletBalanceCache(WalletStripeService stripeService,
+                              @Value("${wallet.cache.enabled:false}") boolean enabled,
+                              @Value("${wallet.journal.enabled:false}") boolean journalEnabled,
+                              @Value("${wallet.cache.max-size:100000}") long maxSize,
+                              @Value("${wallet.cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        this.stripeService = stripeService;
+        this.enabled = enabled;
+        this.journalEnabled = journalEnabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Получение баланса из кэша с загрузкой при промахе.
+     * Загрузка выполняется атомарно для ключа, поэтому инвалидация, пришедшая во время загрузки,
+     * применяется после нее и не теряется.
+     * @param id кошелька
+     * @param loader загрузка баланса из БД
+     * @return баланс кошелька
+     */
+    public CachedBalance get(UUID id, Function<UUID, CachedBalance> loader) {
+        return cache.get(id, loader);
+    }
+
+    /**
+     * Удаление записи из кэша
+     * @param id кошелька
+     */
+    public void invalidate(UUID id) {
+        cache.invalidate(id);
+    }
+
+    /**
+     * Очистка всего кэша
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Обновление кэша после фиксации транзакции, изменившей баланс.
+     * Запись заменяется только более новым значением, чтобы поздно пришедшее событие
+     * не перезаписало свежий баланс.
+     * @param event событие изменения баланса
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBalanceChanged(WalletBalanceChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // баланс кошелька с частями, посчитанный операцией, может не учитывать конкурентные пополнения частей
+        if (event.remote() || event.amount() == null || journalEnabled || stripeService.isStriped(event.walletId())) {
+            log.debug("Инвалидация баланса кошелька с ID {}", event.walletId());
+            cache.invalidate(event.walletId());
+            return;
+        }
+        cache.asMap().merge(event.walletId(), new CachedBalance(event.amount(), event.updatedAt()),
+                (current, updated) -> updated.isNewerThan(current) ? updated : current);
+    }
+
+    /**
+     * Закэшированный баланс
+     * @param amount сумма на счете в копейках
+     * @param updatedAt время последнего обновления
+     */
+    public record CachedBalance(long amount, LocalDateTime updatedAt) {
+
+        boolean isNewerThan(CachedBalance other) {
+            if (other.updatedAt == null || updatedAt == null) {
+                return true;
+            }
+            return !updatedAt.isBefore(other.updatedAt);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package ru.example.itktest.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import ru.example.itktest.dto.WalletBalanceDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.SubscriptionLimitException;
+import ru.example.itktest.model.MinorUnits;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Подписки на изменения балансов кошельков (server-sent events).
+ * <p>
+ * Подписчики хранятся по кошелькам, поэтому изменение баланса затрагивает только подписчиков этого кошелька,
+ * а неактивные подписки не занимают потоков: это поток Reactor, который ждет следующего значения. Источник
+ * изменений - {@link WalletBalanceChangedEvent} после фиксации транзакции: локальные операции и операции
+ * других узлов, полученные {@link WalletChangeNotifier} через LISTEN/NOTIFY (wallet.notify.enabled).
+ * Если новый баланс в событии неизвестен или событие пришло с другого узла, баланс перечитывается
+ * с основного сервера один раз на кошелек в отдельном пуле.
+ * <p>
+ * Подписчик, не успевающий принимать события, получает только последний баланс: промежуточные значения
+ * заменяются новыми, пока предыдущее не отправлено. Изменения, пришедшие не по порядку, отбрасываются по времени
+ * обновления, как в {@link WalletBalanceCache}. Каждые wallet.subscriptions.heartbeat-interval всем
+ * подписчикам отправляется комментарий, чтобы обнаруживать закрытые соединения.
+ */
+@Slf4j
+@Service
+public class WalletBalanceSubscriptions {
+    private final WalletService walletService;
+    private final int maxSubscribers;
+    private final Flux<ServerSentEvent<WalletBalanceDto>> heartbeats;
+
+    /**
+     * Подписчики по ID кошелька
+     */
+    private final Map<UUID, Topic> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    /**
+     * Кошельки, ожидающие перечитывания баланса
+     */
+    private final Set<UUID> pendingReloads = ConcurrentHashMap.newKeySet();
+    private final ExecutorService reloadExecutor;
+
+    public WalletBalanceSubscriptions(WalletService walletService,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${wallet.subscriptions.max-subscribers:5000}") int maxSubscribers,
+                                      @Value("${wallet.subscriptions.heartbeat-interval:PT30S}") Duration heartbeatInterval,
+                                      @Value("${wallet.subscriptions.reload-threads:4}") int reloadThreads) {
+        this.walletService = walletService;
+        this.maxSubscribers = maxSubscribers;
+        // один таймер на все подписки
+        this.heartbeats = Flux.interval(heartbeatInterval)
+                .map(tick -> ServerSentEvent.<WalletBalanceDto>builder().comment("").build())
+                .share();
+        this.reloadExecutor = Executors.newFixedThreadPool(reloadThreads, task -> {
+            Thread thread = new Thread(task, "wallet-subscription-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("wallet.subscriptions.active", subscribers, AtomicInteger::get)
+                .description("Подписки на изменения балансов")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void close() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Подписка на баланс кошелька.
+     * Первое событие - текущий баланс, затем новый баланс после каждого изменения.
+     * Существование кошелька должно быть проверено до подписки.
+     * Место в пределе {@code wallet.subscriptions.max-subscribers} занимается при вызове и освобождается
+     * при завершении подписки на возвращенный поток, поэтому поток должен быть подписан.
+     * @param id кошелька
+     * @return события balance с балансом и комментарии-heartbeat
+     */
+    public Flux<ServerSentEvent<WalletBalanceDto>> subscribe(UUID id) {
+        // место занимается до создания потока, чтобы конкурентные подписки не превысили предел
+        int count;
+        do {
+            count = subscribers.get();
+            if (count >= maxSubscribers) {
+                throw new SubscriptionLimitException(maxSubscribers);
+            }
+        } while (!subscribers.compareAndSet(count, count + 1));
+        AtomicBoolean released = new AtomicBoolean();
+        Flux<ServerSentEvent<WalletBalanceDto>> balances = Flux.<Long>create(sink -> {
+                    Topic topic = topics.compute(id, (key, current) -> {
+                        Topic updated = current == null ? new Topic() : current;
+                        updated.sinks.add(sink);
+                        return updated;
+                    });
+                    sink.onDispose(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            subscribers.decrementAndGet();
+                        }
+                        topics.computeIfPresent(id, (key, current) ->
+                                current.sinks.remove(sink) && current.sinks.isEmpty() ? null : current);
+                    });
+                    // текущий баланс читается после регистрации, чтобы не пропустить изменение между ними
+                    reloadExecutor.execute(() -> reload(id, topic, sink));
+                }, FluxSink.OverflowStrategy.LATEST)
+                .map(amount -> ServerSentEvent.builder(new WalletBalanceDto(MinorUnits.toDecimal(amount)))
+                        .event("balance")
+                        .build());
+        // запрос по одному событию, иначе merge заберет промежуточные балансы в свою очередь
+        return Flux.merge(1, balances, heartbeats.onBackpressureDrop());
+    }
+
+    /**
+     * @return количество активных подписок на узле
+     */
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * Рассылка нового баланса подписчикам кошелька после фиксации изменения
+     * @param event событие изменения баланса
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBalanceChanged(WalletBalanceChangedEvent event) {
+        Topic topic = topics.get(event.walletId());
+        if (topic == null) {
+            return;
+        }
+        // у событий других узлов нет времени изменения, и опоздавшее уведомление не отличить от нового:
+        // они только запускают перечитывание, как и события без баланса
+        if (event.remote() || event.amount() == null) {
+            if (pendingReloads.add(event.walletId())) {
+                reloadExecutor.execute(() -> {
+                    pendingReloads.remove(event.walletId());
+                    reload(event.walletId(), topic, null);
+                });
+            }
+            return;
+        }
+        topic.offer(new WalletBalanceCache.CachedBalance(event.amount(), event.updatedAt()), null);
+    }
+
+    /**
+     * Чтение баланса с основного сервера в обход кэша и рассылка подписчикам
+     * @param initial новый подписчик, которому нужно отправить баланс, даже если он не изменился, либо null
+     */
+    private void reload(UUID id, Topic topic, FluxSink<Long> initial) {
+        try {
+            topic.offer(walletService.loadBalanceFromPrimary(id), initial);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось прочитать баланс кошелька {} для подписчиков: {}", id, e.getMessage());
+            if (initial != null) {
+                initial.error(e);
+            }
+        }
+    }
+
+    /**
+     * Подписчики одного кошелька и последний разосланный баланс
+     */
+    private static final class Topic {
+        private final Set<FluxSink<Long>> sinks = ConcurrentHashMap.newKeySet();
+        private WalletBalanceCache.CachedBalance last;
+
+        synchronized void offer(WalletBalanceCache.CachedBalance balance, FluxSink<Long> initial) {
+            boolean changed = false;
+            if (last == null || balance.isNewerThan(last)) {
+                changed = last == null || last.amount() != balance.amount();
+                last = balance;
+            }
+            if (changed) {
+                long amount = last.amount();
+                sinks.forEach(sink -> sink.next(amount));
+            } else if (initial != null) {
+                initial.next(last.amount());
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ru.example.itktest.service;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletBatchItemResultDto;
+import ru.example.itktest.dto.WalletBatchResultDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.model.BatchItemStatus;
+import ru.example.itktest.model.BatchMode;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.repository.WalletBalanceRow;
+import ru.example.itktest.repository.WalletHistoryEntry;
+import ru.example.itktest.repository.WalletJdbcRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Сервис для проведения пакета операций над кошельками.
+ * <p>
+ * Операции пакета проводятся частями: в одной транзакции все затронутые кошельки блокируются
+ * одним запросом, операции применяются по порядку в памяти, а новые балансы записываются
+ * одним UPDATE на всю часть, проведенные операции - в историю одним INSERT.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WalletBatchService {
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+    private final WalletLedgerService ledgerService;
+    private final WalletWriteBehindService writeBehindService;
+    private final WalletHistoryService historyService;
+
+    /**
+     * Максимальное количество операций в пакете
+     */
+    @Value("${wallet.batch.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * Количество операций в одной транзакции в режиме BEST_EFFORT
+     */
+    @Value("${wallet.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    /**
+     * Проведение пакета операций
+     * @param operations операции в порядке проведения
+     * @param mode ALL_OR_NOTHING - одна транзакция, откатывается при первой же ошибке;
+     *             BEST_EFFORT - проводятся все операции, которые можно провести
+     * @return результат каждой операции
+     */
+    public WalletBatchResultDto execute(List<WalletOperationDto> operations, BatchMode mode) {
+        if (operations == null || operations.isEmpty() || operations.size() > maxSize) {
+            throw new InvalidRequestException("Количество операций в пакете должно быть от 1 до " + maxSize);
+        }
+        if (ledgerService.isEnabled()) {
+            // пакет проверяет и записывает балансы строк wallets, которые в режиме журнала не актуальны
+            throw new InvalidRequestException("Пакетные операции недоступны в режиме журнала операций");
+        }
+        log.debug("Проведение пакета из {} операций в режиме {}", operations.size(), mode);
+
+        WalletBatchItemResultDto[] results = new WalletBatchItemResultDto[operations.size()];
+        List<Integer> valid = validate(operations, results);
+        if (writeBehindService.isEnabled()) {
+            // пакет проверяет балансы строк wallets: неперенесенные пополнения журнала переносятся заранее
+            Set<UUID> ids = new LinkedHashSet<>();
+            valid.forEach(i -> {
+                ids.add(operations.get(i).getId());
+                ids.add(operations.get(i).getTargetId());
+            });
+            writeBehindService.flushIfPending(ids);
+        }
+
+        boolean committed;
+        if (mode == BatchMode.ALL_OR_NOTHING) {
+            committed = valid.size() == operations.size() && applyChunk(operations, valid, results, true);
+            if (!committed) {
+                rollBack(operations, results);
+            }
+        } else {
+            committed = true;
+            for (int from = 0; from < valid.size(); from += chunkSize) {
+                List<Integer> chunk = valid.subList(from, Math.min(from + chunkSize, valid.size()));
+                committed &= applyChunk(operations, chunk, results, false);
+            }
+        }
+
+        return new WalletBatchResultDto(committed, Arrays.asList(results));
+    }
+
+    /**
+     * Проверка операций пакета
+     * @return позиции операций, прошедших валидацию
+     */
+    private List<Integer> validate(List<WalletOperationDto> operations, WalletBatchItemResultDto[] results) {
+        List<Integer> valid = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            WalletOperationDto operation = operations.get(i);
+            if (operation == null) {
+                results[i] = new WalletBatchItemResultDto(i, null, BatchItemStatus.INVALID, null, "Операция обязательна");
+                continue;
+            }
+            Set<ConstraintViolation<WalletOperationDto>> violations = validator.validate(operation);
+            if (violations.isEmpty()) {
+                valid.add(i);
+                continue;
+            }
+            ConstraintViolation<WalletOperationDto> violation = violations.iterator().next();
+            results[i] = new WalletBatchItemResultDto(i, operation.getId(), BatchItemStatus.INVALID, null,
+                    violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        return valid;
+    }
+
+    /**
+     * Проведение части пакета в одной транзакции
+     * @param atomic откатить транзакцию, если хотя бы одна операция не проведена
+     * @return true, если транзакция зафиксирована
+     */
+    private boolean applyChunk(List<WalletOperationDto> operations, List<Integer> chunk,
+                               WalletBatchItemResultDto[] results, boolean atomic) {
+        if (chunk.isEmpty()) {
+            return true;
+        }
+        try {
+            Boolean committed = transactionTemplate.execute(status -> {
+                Set<UUID> ids = new LinkedHashSet<>();
+                for (int i : chunk) {
+                    ids.add(operations.get(i).getId());
+                    if (operations.get(i).getType() == OperationType.TRANSFER) {
+                        ids.add(operations.get(i).getTargetId());
+                    }
+                }
+                Map<UUID, Long> balances = walletJdbcRepository.lockBalances(ids);
+
+                Map<UUID, Long> changed = new LinkedHashMap<>();
+                List<WalletHistoryEntry> history = new ArrayList<>(chunk.size());
+                boolean failed = false;
+                for (int i : chunk) {
+                    WalletOperationDto operation = operations.get(i);
+                    results[i] = apply(i, operation, balances, changed, history);
+                    failed |= results[i].getStatus() != BatchItemStatus.APPLIED;
+                }
+
+                if (atomic && failed) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+
+                for (WalletBalanceRow row : walletJdbcRepository.updateBalances(changed)) {
+                    eventPublisher.publishEvent(WalletBalanceChangedEvent.local(row.id(), row.amount(), row.updatedAt()));
+                }
+                historyService.record(history);
+                return true;
+            });
+            return Boolean.TRUE.equals(committed);
+        } catch (RuntimeException e) {
+            log.warn("Часть пакета из {} операций не проведена: {}", chunk.size(), e.getMessage());
+            for (int i : chunk) {
+                results[i] = new WalletBatchItemResultDto(i, operations.get(i).getId(), BatchItemStatus.FAILED, null, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Применение одной операции к заблокированным балансам
+     * @param history записи истории проведенных операций
+     */
+    private WalletBatchItemResultDto apply(int index, WalletOperationDto operation, Map<UUID, Long> balances,
+                                           Map<UUID, Long> changed, List<WalletHistoryEntry> history) {
+        UUID id = operation.getId();
+        Long current = balances.get(id);
+        if (current == null) {
+            return new WalletBatchItemResultDto(index, id, BatchItemStatus.NOT_FOUND, null, null);
+        }
+        long balance = current;
+
+        long amount = MinorUnits.of(operation.getAmount());
+        switch (operation.getType()) {
+            case WITHDRAW:
+                if (balance < amount) {
+                    return new WalletBatchItemResultDto(index, id, BatchItemStatus.INSUFFICIENT_FUNDS,
+                            MinorUnits.toDecimal(balance), null);
+                }
+                balance -= amount;
+                history.add(WalletHistoryEntry.withdraw(id, amount, balance));
+                break;
+            case DEPOSIT:
+                balance = MinorUnits.add(balance, amount);
+                history.add(WalletHistoryEntry.deposit(id, amount, balance));
+                break;
+            case TRANSFER:
+                UUID targetId = operation.getTargetId();
+                Long target = balances.get(targetId);
+                if (target == null) {
+                    return new WalletBatchItemResultDto(index, id, BatchItemStatus.NOT_FOUND, null,
+                            "Не найден кошелек получателя с id: " + targetId);
+                }
+                if (balance < amount) {
+                    return new WalletBatchItemResultDto(index, id, BatchItemStatus.INSUFFICIENT_FUNDS,
+                            MinorUnits.toDecimal(balance), null);
+                }
+                long credited = MinorUnits.add(target, amount);
+                balance -= amount;
+                balances.put(targetId, credited);
+                changed.put(targetId, credited);
+                history.addAll(WalletHistoryEntry.transfer(id, targetId, amount, balance, credited));
+                break;
+        }
+
+        balances.put(id, balance);
+        changed.put(id, balance);
+        return new WalletBatchItemResultDto(index, id, BatchItemStatus.APPLIED, MinorUnits.toDecimal(balance), null);
+    }
+
+    /**
+     * Пометка проведенных и не начатых операций как отмененных после отката пакета
+     */
+    private void rollBack(List<WalletOperationDto> operations, WalletBatchItemResultDto[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new WalletBatchItemResultDto(i, operations.get(i).getId(), BatchItemStatus.ROLLED_BACK, null, null);
+            } else if (results[i].getStatus() == BatchItemStatus.APPLIED) {
+                results[i].setStatus(BatchItemStatus.ROLLED_BACK);
+                results[i].setAmount(null);
+            }
+        }
+    }
+}
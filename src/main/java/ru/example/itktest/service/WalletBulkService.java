@@ -0,0 +1,126 @@
+package ru.example.itktest.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.example.itktest.dto.WalletBulkCreateDto;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.WalletIdStrategy;
+import ru.example.itktest.repository.WalletJdbcRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Сервис массового создания кошельков.
+ * <p>
+ * ID генерируются приложением (wallet.id.strategy), кошельки вставляются частями по wallet.bulk.chunk-size
+ * одним INSERT на часть в обход EntityManager. Каждая часть фиксируется отдельно, и ее кошельки сразу отдаются клиенту,
+ * поэтому при ошибке посередине клиент получает все созданные к этому моменту кошельки.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WalletBulkService {
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Максимальное количество кошельков в одном запросе
+     */
+    @Value("${wallet.bulk.max-count:1000000}")
+    private int maxCount;
+
+    /**
+     * Количество кошельков в одном INSERT
+     */
+    @Value("${wallet.bulk.chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${wallet.id.strategy:TIME_ORDERED}")
+    private WalletIdStrategy idStrategy;
+
+    /**
+     * Проверка запроса до начала создания
+     * @param dto количество и начальные балансы кошельков
+     */
+    public void validate(WalletBulkCreateDto dto) {
+        if (dto.getCount() > maxCount) {
+            throw new InvalidRequestException("Количество кошельков должно быть от 1 до " + maxCount);
+        }
+        if (dto.getAmounts() != null && dto.getAmounts().size() != dto.getCount()) {
+            throw new InvalidRequestException("Количество начальных балансов должно совпадать с количеством кошельков");
+        }
+    }
+
+    /**
+     * @return количество частей, по которым создаются кошельки
+     */
+    public int chunkCount(WalletBulkCreateDto dto) {
+        return (dto.getCount() + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Создание одной части кошельков
+     * @param dto проверенный {@link #validate(WalletBulkCreateDto)} запрос
+     * @param chunk номер части, от 0 до {@link #chunkCount(WalletBulkCreateDto)}
+     * @return созданные кошельки
+     */
+    public List<WalletDto> createChunk(WalletBulkCreateDto dto, int chunk) {
+        int from = chunk * chunkSize;
+        int size = Math.min(chunkSize, dto.getCount() - from);
+        UUID[] ids = new UUID[size];
+        Long[] amounts = new Long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = idStrategy.next();
+            amounts[i] = MinorUnits.of(initialAmount(dto, from + i));
+        }
+        walletJdbcRepository.insertWallets(ids, amounts);
+
+        List<WalletDto> wallets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wallets.add(new WalletDto(ids[i], MinorUnits.toDecimal(amounts[i])));
+        }
+        return wallets;
+    }
+
+    /**
+     * Создание кошельков с записью созданных в формате NDJSON (один JSON-объект на строку).
+     * Кошельки каждой части пишутся в ответ после ее фиксации.
+     * @param dto проверенный {@link #validate(WalletBulkCreateDto)} запрос
+     * @param out поток ответа
+     */
+    public void create(WalletBulkCreateDto dto, OutputStream out) throws IOException {
+        log.debug("Массовое создание {} кошельков", dto.getCount());
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            int chunks = chunkCount(dto);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                for (WalletDto wallet : createChunk(dto, chunk)) {
+                    generator.writeObject(wallet);
+                }
+                generator.flush();
+            }
+            generator.writeRaw('\n');
+        }
+        log.info("Создано {} кошельков", dto.getCount());
+    }
+
+    private static BigDecimal initialAmount(WalletBulkCreateDto dto, int index) {
+        if (dto.getAmounts() != null) {
+            return dto.getAmounts().get(index);
+        }
+        return dto.getAmount() == null ? BigDecimal.ZERO : dto.getAmount();
+    }
+}
@@ -0,0 +1,153 @@
+package ru.example.itktest.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Межузловые уведомления об изменении балансов через Postgres LISTEN/NOTIFY.
+ * <p>
+ * Локальные изменения отправляются через pg_notify в той же транзакции, что и UPDATE,
+ * поэтому другие узлы получают уведомление только после фиксации. Уведомления других узлов
+ * читаются отдельным соединением вне пула и публикуются как удаленные события.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WalletChangeNotifier implements SmartLifecycle {
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WalletBalanceCache balanceCache;
+
+    /**
+     * Идентификатор текущего узла, чтобы не обрабатывать собственные уведомления
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${wallet.notify.enabled:false}")
+    private boolean enabled;
+
+    @Value("${wallet.notify.channel:wallet_changes}")
+    private String channel;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Отправка уведомления об изменении баланса в текущей транзакции
+     * @param event событие изменения баланса
+     */
+    @EventListener
+    public void onBalanceChanged(WalletBalanceChangedEvent event) {
+        if (!enabled || event.remote()) {
+            return;
+        }
+        String amount = event.amount() == null ? "" : event.amount().toString();
+        String payload = event.walletId() + "," + amount + "," + nodeId;
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> { }, channel, payload);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "wallet-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Цикл чтения уведомлений с переподключением при обрыве соединения
+     */
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN \"" + channel + "\"");
+                }
+                // уведомления, пришедшие до подписки, могли быть пропущены
+                balanceCache.invalidateAll();
+                log.info("Подписка на уведомления об изменении балансов, канал: {}", channel);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) RECONNECT_DELAY_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Соединение для уведомлений об изменении балансов потеряно: {}", e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Публикация удаленного события по содержимому уведомления
+     * @param payload строка вида walletId,amount,nodeId (amount в копейках, пустой, если баланс неизвестен)
+     */
+    private void dispatch(String payload) {
+        String[] parts = payload.split(",");
+        if (parts.length != 3 || nodeId.equals(parts[2])) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new WalletBalanceChangedEvent(
+                    UUID.fromString(parts[0]), parts[1].isEmpty() ? null : Long.valueOf(parts[1]), null, true));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное уведомление об изменении баланса: {}", payload);
+        }
+    }
+}
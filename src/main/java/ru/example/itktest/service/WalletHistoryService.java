@@ -0,0 +1,229 @@
+package ru.example.itktest.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.example.itktest.dto.WalletOperationHistoryDto;
+import ru.example.itktest.dto.WalletOperationPageDto;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.repository.WalletHistoryEntry;
+import ru.example.itktest.repository.WalletHistoryRepository;
+import ru.example.itktest.repository.WalletRepository;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * История операций кошельков.
+ * <p>
+ * Операции записываются в wallet_operations в транзакции, которая их проводит, одним INSERT на транзакцию,
+ * сколько бы операций в ней ни было. Таблица секционирована по месяцам: фоновая задача заранее создает секции
+ * на wallet.history.premake-months месяцев вперед, а секции старше wallet.history.retention-months месяцев
+ * отсоединяет без блокировки вставок (DETACH ... CONCURRENTLY) и удаляет.
+ * <p>
+ * Секции по умолчанию (DEFAULT) нет: с ней отсоединение без блокировки невозможно. Поэтому вставка за месяц
+ * без секции завершается ошибкой вместе с проводящей операцию транзакцией. Задача после создания секций
+ * проверяет, на сколько месяцев вперед они есть, публикует это в метрике wallet.history.partitions.months-ahead
+ * и пишет ошибку в журнал, если секций меньше, чем wallet.history.premake-months.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WalletHistoryService {
+    private static final LocalDateTime EPOCH = LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC);
+
+    private final WalletHistoryRepository historyRepository;
+    private final WalletRepository walletRepository;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Количество месяцев после текущего, на которые созданы секции; -1, если нет секции текущего месяца
+     */
+    private final AtomicInteger monthsAhead = new AtomicInteger(-1);
+
+    /**
+     * Записывать ли историю операций
+     */
+    @Value("${wallet.history.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Количество месяцев, на которые секции создаются заранее
+     */
+    @Value("${wallet.history.premake-months:2}")
+    private int premakeMonths;
+
+    /**
+     * Количество полных месяцев, за которые хранится история, не считая текущего; 0 - хранить всю историю
+     */
+    @Value("${wallet.history.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${wallet.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${wallet.page.max-size:1000}")
+    private int maxPageSize;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("wallet.history.partitions.months-ahead", monthsAhead, AtomicInteger::get)
+                .description("Количество месяцев после текущего, на которые созданы секции истории операций")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Запись операций в текущей транзакции
+     * @param entries записи истории в порядке проведения операций
+     */
+    public void record(List<WalletHistoryEntry> entries) {
+        if (enabled && !entries.isEmpty()) {
+            historyRepository.insert(entries);
+        }
+    }
+
+    public void record(WalletHistoryEntry entry) {
+        record(List.of(entry));
+    }
+
+    /**
+     * Постраничное получение истории кошелька от новых операций к старым
+     * @param walletId кошелька
+     * @param cursor курсор, полученный с предыдущей страницей, либо null для первой страницы
+     * @param limit размер страницы, либо null для размера по умолчанию
+     * @return страница операций и курсор следующей страницы
+     */
+    @Transactional(readOnly = true)
+    public WalletOperationPageDto getPage(UUID walletId, String cursor, Integer limit) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size < 1 || size > maxPageSize) {
+            throw new InvalidRequestException("Размер страницы должен быть от 1 до " + maxPageSize);
+        }
+        Position before = cursor == null ? null : decodeCursor(cursor);
+
+        // запрашивается на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<WalletOperationHistoryDto> items = before == null
+                ? historyRepository.findPage(walletId, null, 0, size + 1)
+                : historyRepository.findPage(walletId, before.createdAt(), before.id(), size + 1);
+        if (items.isEmpty() && cursor == null && walletRepository.findBalanceById(walletId).isEmpty()) {
+            throw new WalletNotFoundException(walletId);
+        }
+
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = items.subList(0, size);
+            WalletOperationHistoryDto last = items.get(size - 1);
+            nextCursor = encodeCursor(new Position(last.createdAt(), last.id()));
+        }
+        return new WalletOperationPageDto(items, nextCursor);
+    }
+
+    /**
+     * Создание секций на будущие месяцы, проверка созданных секций и удаление секций старше срока хранения.
+     * Выполняется вне транзакции: отсоединение секции без блокировок состоит из двух транзакций.
+     */
+    @Scheduled(fixedDelayString = "${wallet.history.maintenance-interval:PT1H}")
+    public void maintainPartitions() {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= premakeMonths; i++) {
+            try {
+                historyRepository.createPartition(current.plusMonths(i));
+            } catch (RuntimeException e) {
+                log.error("Не удалось создать секцию истории операций за {}: {}", current.plusMonths(i), e.getMessage());
+            }
+        }
+        List<WalletHistoryRepository.HistoryPartition> partitions = historyRepository.findPartitions();
+        checkPartitionsAhead(current, partitions);
+        if (retentionMonths <= 0) {
+            return;
+        }
+
+        YearMonth oldest = current.minusMonths(retentionMonths);
+        for (WalletHistoryRepository.HistoryPartition partition : partitions) {
+            if (!partition.month().isBefore(oldest)) {
+                continue;
+            }
+            try {
+                if (partition.attached()) {
+                    historyRepository.detachPartition(partition.month(), partition.detachPending());
+                }
+                historyRepository.dropPartition(partition.month());
+                log.info("Удалена секция истории операций за {}", partition.month());
+            } catch (RuntimeException e) {
+                // секцию могли одновременно отсоединить на другом узле
+                log.warn("Не удалось удалить секцию истории операций за {}: {}", partition.month(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Проверка, что секции созданы на wallet.history.premake-months месяцев вперед
+     * @param current текущий месяц
+     * @param partitions существующие секции
+     */
+    private void checkPartitionsAhead(YearMonth current, List<WalletHistoryRepository.HistoryPartition> partitions) {
+        Set<YearMonth> attached = partitions.stream()
+                .filter(partition -> partition.attached() && !partition.detachPending())
+                .map(WalletHistoryRepository.HistoryPartition::month)
+                .collect(Collectors.toSet());
+        int ahead = -1;
+        while (ahead < premakeMonths && attached.contains(current.plusMonths(ahead + 1))) {
+            ahead++;
+        }
+        monthsAhead.set(ahead);
+        if (ahead < 0) {
+            log.error("Нет секции истории операций за {}: операции над кошельками завершаются ошибкой", current);
+        } else if (ahead < premakeMonths) {
+            log.error("Нет секции истории операций за {}: операции в этом месяце будут завершаться ошибкой",
+                    current.plusMonths(ahead + 1));
+        }
+    }
+
+    static String encodeCursor(Position position) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(ChronoUnit.MICROS.between(EPOCH, position.createdAt())).putLong(position.id());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static Position decodeCursor(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != 16) {
+                throw new IllegalArgumentException();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new Position(EPOCH.plus(buffer.getLong(), ChronoUnit.MICROS), buffer.getLong());
+        } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+            throw new InvalidRequestException("Некорректный курсор страницы");
+        }
+    }
+
+    /**
+     * Позиция операции в истории кошелька
+     * @param createdAt время проведения
+     * @param id операции
+     */
+    record Position(LocalDateTime createdAt, long id) {
+    }
+}
@@ -0,0 +1,184 @@
+package ru.example.itktest.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletHoldDto;
+import ru.example.itktest.dto.WalletHoldRequestDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.HoldNotFoundException;
+import ru.example.itktest.exception.HoldStateException;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.HoldStatus;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.WalletBalanceRow;
+import ru.example.itktest.repository.WalletHoldRepository;
+import ru.example.itktest.repository.WalletJdbcRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Двухэтапное списание: резервирование средств, затем подтверждение или отмена резерва.
+ * <p>
+ * Зарезервированная сумма сразу исключается из доступного баланса кошелька, поэтому между резервированием
+ * и подтверждением не нужно держать открытую транзакцию или блокировку. Неподтвержденные резервы
+ * отменяются по истечении времени жизни фоновой задачей. Повторное подтверждение подтвержденного
+ * или отмена отмененного резерва возвращает резерв без изменений.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WalletHoldService {
+    private final WalletHoldRepository holdRepository;
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WalletLedgerService ledgerService;
+    private final WalletWriteBehindService writeBehindService;
+
+    /**
+     * Время жизни резерва, если оно не задано в запросе
+     */
+    @Value("${wallet.holds.default-ttl:PT15M}")
+    private Duration defaultTtl;
+
+    /**
+     * Максимальное время жизни резерва
+     */
+    @Value("${wallet.holds.max-ttl:P7D}")
+    private Duration maxTtl;
+
+    /**
+     * Количество резервов, отменяемых одной транзакцией
+     */
+    @Value("${wallet.holds.expire-batch-size:1000}")
+    private int expireBatchSize;
+
+    /**
+     * Резервирование средств кошелька
+     * @param walletId кошелька
+     * @param dto сумма и время жизни резерва
+     * @return созданный резерв
+     */
+    public WalletHoldDto hold(UUID walletId, WalletHoldRequestDto dto) {
+        if (ledgerService.isEnabled()) {
+            throw new InvalidRequestException("Резервирование средств недоступно в режиме журнала операций");
+        }
+        Duration ttl = dto.getTtlSeconds() == null ? defaultTtl : Duration.ofSeconds(dto.getTtlSeconds());
+        if (ttl.compareTo(maxTtl) > 0) {
+            throw new InvalidRequestException("Время жизни резерва не может превышать " + maxTtl);
+        }
+        UUID holdId = UUID.randomUUID();
+        long amount = MinorUnits.of(dto.getAmount());
+        log.debug("Резервирование {} на кошельке с ID {}", amount, walletId);
+        writeBehindService.flushIfPending(walletId);
+
+        return transactionTemplate.execute(status -> {
+            WalletHoldRepository.HoldResult result = holdRepository.hold(holdId, walletId, amount, ttl)
+                    .orElseThrow(() -> new WalletNotFoundException(walletId));
+            if (!result.applied() && result.balance() >= amount) {
+                // средств хватает только с учетом частей баланса
+                walletJdbcRepository.lockBalances(List.of(walletId));
+                result = holdRepository.hold(holdId, walletId, amount, ttl)
+                        .orElseThrow(() -> new WalletNotFoundException(walletId));
+            }
+            if (!result.applied()) {
+                throw new InsufficientFundsException(walletId, result.balance(), amount);
+            }
+
+            eventPublisher.publishEvent(WalletBalanceChangedEvent.local(walletId, result.balance(), result.updatedAt()));
+            return new WalletHoldDto(holdId, walletId, MinorUnits.toDecimal(amount), HoldStatus.ACTIVE, result.expiresAt());
+        });
+    }
+
+    /**
+     * Подтверждение резерва: зарезервированная сумма списывается окончательно.
+     * Доступный баланс при этом не меняется.
+     * @param holdId ID резерва
+     * @return подтвержденный резерв
+     */
+    public WalletHoldDto capture(UUID holdId) {
+        Optional<WalletHoldDto> captured = holdRepository.capture(holdId);
+        if (captured.isPresent()) {
+            log.debug("Резерв {} подтвержден", holdId);
+            return captured.get();
+        }
+        return completed(holdId, HoldStatus.CAPTURED);
+    }
+
+    /**
+     * Отмена резерва: зарезервированная сумма возвращается в доступный баланс
+     * @param holdId ID резерва
+     * @return отмененный резерв
+     */
+    public WalletHoldDto release(UUID holdId) {
+        Optional<WalletBalanceRow> released = transactionTemplate.execute(status -> {
+            Optional<WalletBalanceRow> row = holdRepository.release(holdId);
+            row.ifPresent(r -> eventPublisher.publishEvent(WalletBalanceChangedEvent.local(r.id(), r.amount(), r.updatedAt())));
+            return row;
+        });
+        if (released.isPresent()) {
+            log.debug("Резерв {} отменен", holdId);
+        }
+        return completed(holdId, HoldStatus.RELEASED);
+    }
+
+    /**
+     * Получение резерва
+     * @param holdId ID резерва
+     * @return резерв
+     */
+    public WalletHoldDto getHold(UUID holdId) {
+        return holdRepository.findById(holdId)
+                .orElseThrow(() -> new HoldNotFoundException(holdId));
+    }
+
+    /**
+     * Резерв после подтверждения или отмены.
+     * Отмена истекшего резерва считается выполненной: его сумма уже возвращена в доступный баланс.
+     * Подтверждение истекшего резерва отклоняется так же, как подтверждение отмененного.
+     * @param holdId ID резерва
+     * @param expected ожидаемое состояние
+     * @return резерв в ожидаемом состоянии
+     */
+    private WalletHoldDto completed(UUID holdId, HoldStatus expected) {
+        WalletHoldDto hold = getHold(holdId);
+        if (hold.status() == expected || (expected == HoldStatus.RELEASED && hold.status() == HoldStatus.EXPIRED)) {
+            return hold;
+        }
+        // активный резерв не подтвержден, потому что истек, а задача отмены до него еще не дошла
+        HoldStatus status = hold.status() == HoldStatus.ACTIVE ? HoldStatus.EXPIRED : hold.status();
+        throw new HoldStateException(holdId, status);
+    }
+
+    /**
+     * Отмена истекших резервов порциями по wallet.holds.expire-batch-size, каждая порция в своей транзакции
+     */
+    @Scheduled(fixedDelayString = "${wallet.holds.expire-interval:PT10S}")
+    public void expire() {
+        int expired;
+        do {
+            Map<UUID, Long> released = transactionTemplate.execute(status -> {
+                Map<UUID, Long> amounts = holdRepository.expire(expireBatchSize);
+                for (WalletBalanceRow row : holdRepository.returnHeld(amounts)) {
+                    eventPublisher.publishEvent(WalletBalanceChangedEvent.local(row.id(), row.amount(), row.updatedAt()));
+                }
+                return amounts;
+            });
+            expired = released.size();
+            if (expired > 0) {
+                log.debug("Отменены истекшие резервы по {} кошелькам", expired);
+            }
+        } while (expired > 0);
+    }
+}
@@ -0,0 +1,146 @@
+package ru.example.itktest.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.LedgerBalance;
+import ru.example.itktest.repository.WalletLedgerRepository;
+
+import java.util.UUID;
+
+/**
+ * Проведение операций через журнал операций.
+ * <p>
+ * В режиме журнала операции не изменяют строку кошелька, а добавляют строки в wallet_ledger,
+ * поэтому пополнения не конкурируют за строку, а списания одного кошелька проверяются по очереди
+ * под короткой advisory-блокировкой. Фоновая компактизация периодически переносит хвост журнала в снимки.
+ * <p>
+ * Баланс, возвращаемый операцией, посчитан на момент ее проведения и может не учитывать
+ * конкурентные пополнения, поэтому события об изменении баланса публикуются без суммы
+ * и только инвалидируют кэш.
+ */
+@Slf4j
+@Service
+public class WalletLedgerService {
+    private final WalletLedgerRepository ledgerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+
+    /**
+     * Максимальное количество кошельков за один проход компактизации
+     */
+    @Value("${wallet.ledger.compaction-batch-size:1000}")
+    private int compactionBatchSize;
+
+    /**
+     * Включен ли режим объединения операций (несовместим с режимом журнала)
+     */
+    @Value("${wallet.coalescing.enabled:false}")
+    private boolean coalescingEnabled;
+
+    public WalletLedgerService(WalletLedgerRepository ledgerRepository,
+                               TransactionTemplate transactionTemplate,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${wallet.ledger.enabled:false}") boolean enabled) {
+        this.ledgerRepository = ledgerRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void checkConfiguration() {
+        if (enabled && coalescingEnabled) {
+            throw new IllegalStateException("Режим журнала несовместим с wallet.coalescing.enabled=true");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пополнение кошелька в текущей транзакции
+     * @param id кошелька
+     * @param amount сумма пополнения в копейках
+     * @return кошелек с балансом после пополнения
+     */
+    public WalletDto deposit(UUID id, long amount) {
+        long balance = ledgerRepository.deposit(id, amount)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+        eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id));
+        return WalletDto.builder().id(id).amount(MinorUnits.toDecimal(balance)).build();
+    }
+
+    /**
+     * Списание с кошелька в текущей транзакции
+     * @param id кошелька
+     * @param amount сумма списания в копейках
+     * @return кошелек с балансом после списания
+     */
+    public WalletDto withdraw(UUID id, long amount) {
+        LedgerBalance result = ledgerRepository.withdraw(id, amount)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+        if (!result.applied()) {
+            throw new InsufficientFundsException(id, result.amount(), amount);
+        }
+        eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id));
+        return WalletDto.builder().id(id).amount(MinorUnits.toDecimal(result.amount())).build();
+    }
+
+    /**
+     * Перевод между кошельками в текущей транзакции.
+     * Блокируется только кошелек отправителя, зачисление получателю - обычная строка журнала.
+     * @param fromId кошелек отправителя
+     * @param toId кошелек получателя
+     * @param amount сумма перевода в копейках
+     * @return кошелек отправителя с балансом после перевода
+     */
+    public WalletDto transfer(UUID fromId, UUID toId, long amount) {
+        WalletDto from = withdraw(fromId, amount);
+        deposit(toId, amount);
+        return from;
+    }
+
+    /**
+     * Получение баланса по снимку и хвосту журнала
+     * @param id кошелька
+     * @return баланс кошелька в копейках
+     */
+    public long getBalance(UUID id) {
+        return ledgerRepository.findBalance(id)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+    }
+
+    /**
+     * Перенос хвоста журнала в снимки балансов.
+     * Проход повторяется, пока за один проход обновляется полная порция кошельков.
+     */
+    @Scheduled(fixedDelayString = "${wallet.ledger.compaction-interval:PT10S}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        int compacted;
+        int total = 0;
+        do {
+            compacted = transactionTemplate.execute(status ->
+                    ledgerRepository.tryLockCompaction() ? ledgerRepository.compact(compactionBatchSize) : 0);
+            total += compacted;
+        } while (compacted == compactionBatchSize);
+
+        if (total > 0) {
+            log.debug("Обновлено {} снимков балансов по журналу операций", total);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.example.itktest.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.OperationType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Метрики операций над кошельками: таймер wallet.operations с тегами type (тип операции)
+ * и outcome (success, not_found, insufficient_funds, invalid, error), а также учет кошельков
+ * в {@link HotWalletTracker}.
+ */
+@Component
+public class WalletMetrics {
+    /**
+     * Результат операции, значение тега outcome
+     */
+    private enum Outcome { SUCCESS, NOT_FOUND, INSUFFICIENT_FUNDS, INVALID, ERROR }
+
+    private final HotWalletTracker hotWalletTracker;
+    /**
+     * Таймеры по типу операции и результату, создаются заранее, чтобы не искать их в реестре на каждой операции
+     */
+    private final Timer[][] timers = new Timer[OperationType.values().length][Outcome.values().length];
+
+    public WalletMetrics(MeterRegistry meterRegistry, HotWalletTracker hotWalletTracker) {
+        this.hotWalletTracker = hotWalletTracker;
+        for (OperationType type : OperationType.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                timers[type.ordinal()][outcome.ordinal()] = Timer.builder("wallet.operations")
+                        .description("Операции над кошельками")
+                        .tag("type", type.name())
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Проведение операции с записью длительности и результата
+     * @param dto операция
+     * @param operation проведение операции
+     * @return результат операции
+     */
+    public <T> T record(WalletOperationDto dto, Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            T result = operation.get();
+            record(dto, start, null);
+            return result;
+        } catch (RuntimeException e) {
+            record(dto, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Неблокирующий вариант {@link #record(WalletOperationDto, Supplier)}: время считается от подписки
+     */
+    public <T> Mono<T> record(WalletOperationDto dto, Mono<T> operation) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return operation
+                    .doOnSuccess(result -> record(dto, start, null))
+                    .doOnError(e -> record(dto, start, e));
+        });
+    }
+
+    private void record(WalletOperationDto dto, long start, Throwable error) {
+        timers[dto.getType().ordinal()][outcome(error).ordinal()]
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        hotWalletTracker.offer(dto.getId());
+        hotWalletTracker.offer(dto.getTargetId());
+    }
+
+    private static Outcome outcome(Throwable error) {
+        if (error == null) {
+            return Outcome.SUCCESS;
+        }
+        if (error instanceof WalletNotFoundException) {
+            return Outcome.NOT_FOUND;
+        }
+        if (error instanceof InsufficientFundsException) {
+            return Outcome.INSUFFICIENT_FUNDS;
+        }
+        if (error instanceof InvalidRequestException) {
+            return Outcome.INVALID;
+        }
+        return Outcome.ERROR;
+    }
+}
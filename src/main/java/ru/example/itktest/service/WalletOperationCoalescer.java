@@ -0,0 +1,239 @@
+package ru.example.itktest.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.WalletBalanceView;
+import ru.example.itktest.repository.WalletHistoryEntry;
+import ru.example.itktest.repository.WalletJdbcRepository;
+import ru.example.itktest.repository.WalletRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Объединение конкурентных операций над одним кошельком (group commit).
+ * <p>
+ * Операции над одним кошельком складываются в очередь. Поток, захвативший блокировку очереди,
+ * забирает накопившиеся за окно сбора операции, применяет их по порядку и записывает результат
+ * одним UPDATE в одной транзакции, а проведенные операции - в историю одним INSERT. Остальные потоки ждут,
+ * пока их операция не будет проведена в одной из пачек, после чего каждый получает свой результат или свое исключение.
+ * <p>
+ * Опустевшая очередь удаляется из словаря владельцем блокировки после проведения пачки, а добавление операции
+ * и удаление очереди выполняются атомарно для ключа словаря. Поэтому операция не попадает в удаленную очередь,
+ * и у кошелька не бывает двух очередей с проводимыми пачками одновременно.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WalletOperationCoalescer {
+    private final WalletRepository walletRepository;
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WalletHistoryService historyService;
+
+    /**
+     * Очереди ожидающих операций по идентификатору кошелька
+     */
+    private final ConcurrentHashMap<UUID, WalletQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Шаг ожидания новых операций в окне сбора пачки
+     */
+    private static final long COLLECT_PARK_NANOS = 50_000;
+
+    /**
+     * Включен ли режим объединения операций
+     */
+    @Value("${wallet.coalescing.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Максимальное количество операций в одной транзакции
+     */
+    @Value("${wallet.coalescing.max-batch-size:100}")
+    private int maxBatchSize;
+
+    /**
+     * Окно сбора пачки: сколько владелец блокировки ждет новых операций, пока пачка не заполнена
+     */
+    @Value("${wallet.coalescing.max-wait:2ms}")
+    private Duration maxWait;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Постановка операции в очередь кошелька и ожидание ее проведения
+     * @param dto операция над кошельком
+     * @return обновленный кошелек
+     */
+    public WalletDto submit(WalletOperationDto dto) {
+        UUID id = dto.getId();
+        PendingOperation operation = new PendingOperation(dto);
+
+        WalletQueue queue = queues.compute(id, (key, current) -> {
+            WalletQueue target = current != null ? current : new WalletQueue();
+            target.pending.add(operation);
+            return target;
+        });
+
+        while (!operation.result.isDone()) {
+            queue.lock.lock();
+            try {
+                // операция могла быть проведена предыдущим владельцем блокировки
+                if (!operation.result.isDone()) {
+                    applyBatch(id, drain(queue));
+                    // все извлеченные операции проведены; новые операции попадут уже в новую очередь
+                    queues.computeIfPresent(id, (key, current) ->
+                            current == queue && current.pending.isEmpty() ? null : current);
+                }
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+
+        try {
+            return operation.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Извлечение очередной пачки операций из очереди.
+     * Пока пачка не заполнена, операции собираются в течение {@code wallet.coalescing.max-wait}.
+     * @param queue очередь кошелька
+     * @return операции в порядке поступления
+     */
+    private List<PendingOperation> drain(WalletQueue queue) {
+        List<PendingOperation> batch = new ArrayList<>();
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (batch.size() < maxBatchSize) {
+            PendingOperation next = queue.pending.poll();
+            if (next != null) {
+                batch.add(next);
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(Math.min(remaining, COLLECT_PARK_NANOS));
+        }
+        return batch;
+    }
+
+    /**
+     * Проведение пачки операций в одной транзакции.
+     * Результаты отдаются вызывающим потокам только после фиксации транзакции.
+     * @param id кошелька
+     * @param batch операции в порядке поступления
+     */
+    private void applyBatch(UUID id, List<PendingOperation> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.debug("Проведение пачки из {} операций над кошельком с ID: {}", batch.size(), id);
+
+        List<Runnable> outcomes = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                outcomes.clear();
+                Long initial = walletJdbcRepository.lockBalances(List.of(id)).get(id);
+                if (initial == null) {
+                    WalletNotFoundException notFound = new WalletNotFoundException(id);
+                    batch.forEach(operation -> outcomes.add(() -> operation.result.completeExceptionally(notFound)));
+                    return;
+                }
+
+                long balance = initial;
+                List<WalletHistoryEntry> history = new ArrayList<>(batch.size());
+                for (PendingOperation operation : batch) {
+                    long amount = MinorUnits.of(operation.dto.getAmount());
+                    switch (operation.dto.getType()) {
+                        case WITHDRAW:
+                            if (balance < amount) {
+                                InsufficientFundsException insufficient = new InsufficientFundsException(id, balance, amount);
+                                outcomes.add(() -> operation.result.completeExceptionally(insufficient));
+                                continue;
+                            }
+                            balance -= amount;
+                            history.add(WalletHistoryEntry.withdraw(id, amount, balance));
+                            break;
+                        case DEPOSIT:
+                            try {
+                                balance = MinorUnits.add(balance, amount);
+                            } catch (InvalidRequestException overflow) {
+                                outcomes.add(() -> operation.result.completeExceptionally(overflow));
+                                continue;
+                            }
+                            history.add(WalletHistoryEntry.deposit(id, amount, balance));
+                            break;
+                        case TRANSFER:
+                            // переводы не объединяются, см. WalletService.walletOperation
+                            throw new IllegalStateException("Перевод не может быть проведен в пачке");
+                    }
+                    WalletDto updated = WalletDto.builder().id(id).amount(MinorUnits.toDecimal(balance)).build();
+                    outcomes.add(() -> operation.result.complete(updated));
+                }
+
+                if (balance != initial) {
+                    WalletBalanceView written = walletRepository.setAmount(id, balance);
+                    eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id, written.getAmount(), written.getUpdatedAt()));
+                }
+                historyService.record(history);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Пачка из {} операций над кошельком с ID {} не проведена: {}", batch.size(), id, e.getMessage());
+            batch.forEach(operation -> operation.result.completeExceptionally(e));
+            return;
+        }
+
+        outcomes.forEach(Runnable::run);
+    }
+
+    /**
+     * Очередь операций одного кошелька
+     */
+    private static final class WalletQueue {
+        private final Queue<PendingOperation> pending = new ConcurrentLinkedQueue<>();
+        private final ReentrantLock lock = new ReentrantLock();
+    }
+
+    /**
+     * Операция, ожидающая проведения
+     */
+    private static final class PendingOperation {
+        private final WalletOperationDto dto;
+        private final CompletableFuture<WalletDto> result = new CompletableFuture<>();
+
+        private PendingOperation(WalletOperationDto dto) {
+            this.dto = dto;
+        }
+    }
+}
@@ -3,18 +3,44 @@ package ru.example.itktest.service;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.config.ReplicaRoutingDataSource;
 import ru.example.itktest.dto.WalletBalanceDto;
 import ru.example.itktest.dto.WalletDto;
 import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.dto.WalletPageDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
 import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.exception.InvalidRequestException;
 import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.mapper.WalletMapper;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.model.OperationType;
 import ru.example.itktest.model.Wallet;
+import ru.example.itktest.repository.WalletBalanceRow;
+import ru.example.itktest.repository.WalletBalanceView;
+import ru.example.itktest.repository.WalletHistoryEntry;
+import ru.example.itktest.repository.WalletJdbcRepository;
 import ru.example.itktest.repository.WalletRepository;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -26,7 +52,28 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class WalletService {
     private final WalletRepository walletRepository;
-    private final ModelMapper modelMapper;
+    private final WalletMapper walletMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final WalletOperationCoalescer coalescer;
+    private final WalletBalanceCache balanceCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyService idempotencyService;
+    private final WalletLedgerService ledgerService;
+    private final WalletStripeService stripeService;
+    private final WalletMetrics walletMetrics;
+    private final WalletWriteBehindService writeBehindService;
+    private final WalletHistoryService historyService;
+
+    @Value("${wallet.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${wallet.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${wallet.stream.fetch-size:1000}")
+    private int streamFetchSize;
 
     /**
      * Создание нового кошелька
@@ -36,78 +83,342 @@ public class WalletService {
     public WalletDto createWallet() {
         log.debug("Создание нового кошелька");
 
-        Wallet wallet = new Wallet();
-        wallet.setAmount(new BigDecimal("0"));
-
-        Wallet savedWallet = walletRepository.save(wallet);
+        Wallet savedWallet = walletRepository.save(new Wallet());
 
         log.info("Кошелек успешно создан с ID: {}", savedWallet.getId());
-        return modelMapper.map(savedWallet, WalletDto.class);
+        return walletMapper.toDto(savedWallet);
     }
 
     /**
-     * Проведение операции над кошельком
+     * Проведение операции над кошельком.
+     * В режиме объединения операция ставится в очередь кошелька и проводится в общей транзакции,
+     * иначе проводится в собственной транзакции. Переводы и операции над кошельками, баланс которых
+     * разбит на части, всегда проводятся в собственной транзакции.
+     * В режиме журнала отложенной записи пополнения записываются в журнал без транзакции.
      * @param dto с типом операции и вносимой/снимаемой суммой
-     * @return обновленный кошелек
+     * @return обновленный кошелек (для перевода - кошелек отправителя)
      */
-    @Transactional
     public WalletDto walletOperation(WalletOperationDto dto) {
-        UUID id = dto.getId();
-        log.debug("Проведение операции над кошельком с ID: {}", id);
+        return walletMetrics.record(dto, () -> {
+            if (writeBehindService.isEnabled()) {
+                if (dto.getType() == OperationType.DEPOSIT) {
+                    return writeBehindService.deposit(dto.getId(), MinorUnits.of(dto.getAmount()));
+                }
+                writeBehindService.flushIfPending(dto.getId(), dto.getTargetId());
+            }
+            if (coalescer.isEnabled() && dto.getType() != OperationType.TRANSFER && !stripeService.isStriped(dto.getId())) {
+                return coalescer.submit(dto);
+            }
+            return transactionTemplate.execute(status -> applyOperation(dto));
+        });
+    }
 
-        BigDecimal amount = dto.getAmount();
-        int updated;
+    /**
+     * Проведение операции над кошельком с ключом идемпотентности.
+     * Ключ захватывается и результат сохраняется в той же транзакции, что и операция,
+     * поэтому повтор запроса с тем же ключом возвращает сохраненный результат и не проводит операцию второй раз.
+     * @param dto с типом операции и вносимой/снимаемой суммой
+     * @param idempotencyKey ключ идемпотентности, либо null
+     * @return обновленный кошелек
+     */
+    public WalletDto walletOperation(WalletOperationDto dto, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return walletOperation(dto);
+        }
 
-        switch (dto.getType()) {
-            case WITHDRAW:
-                updated = walletRepository.withdraw(id, amount);
+        return walletMetrics.record(dto, () -> {
+            WalletDto completed = idempotencyService.findCompleted(idempotencyKey, dto);
+            if (completed != null) {
+                return completed;
+            }
+            // ключ захватывается в транзакции операции, поэтому такие пополнения журнал не используют
+            writeBehindService.flushIfPending(dto.getId(), dto.getTargetId());
 
-                if (updated == 0) {
-                    // wallet отсутствует или недостаточно средств
-                    Wallet wallet = walletRepository.findById(id).orElseThrow(() -> new WalletNotFoundException(id));
-                    throw new InsufficientFundsException(id, wallet.getAmount(), amount);
+            return transactionTemplate.execute(status -> {
+                Optional<WalletDto> previous = idempotencyService.claim(idempotencyKey, dto);
+                if (previous.isPresent()) {
+                    return previous.get();
                 }
-                break;
-            case DEPOSIT:
-                updated = walletRepository.deposit(id, dto.getAmount());
+                WalletDto updated = applyOperation(dto);
+                idempotencyService.complete(idempotencyKey, dto, updated);
+                return updated;
+            });
+        });
+    }
 
-                if (updated == 0) {
-                    throw new WalletNotFoundException(id);
-                }
-                break;
+    /**
+     * Проведение одиночной операции над кошельком в текущей транзакции
+     * @param dto с типом операции и вносимой/снимаемой суммой
+     * @return обновленный кошелек
+     */
+    private WalletDto applyOperation(WalletOperationDto dto) {
+        UUID id = dto.getId();
+        log.debug("Проведение операции над кошельком с ID: {}", id);
+
+        long amount = MinorUnits.of(dto.getAmount());
+        if (ledgerService.isEnabled()) {
+            WalletDto updated = switch (dto.getType()) {
+                case WITHDRAW -> ledgerService.withdraw(id, amount);
+                case DEPOSIT -> ledgerService.deposit(id, amount);
+                case TRANSFER -> ledgerService.transfer(id, dto.getTargetId(), amount);
+            };
+            // баланс в режиме журнала может не учитывать конкурентные пополнения, поэтому в историю не пишется
+            historyService.record(switch (dto.getType()) {
+                case WITHDRAW -> List.of(WalletHistoryEntry.withdraw(id, amount, null));
+                case DEPOSIT -> List.of(WalletHistoryEntry.deposit(id, amount, null));
+                case TRANSFER -> WalletHistoryEntry.transfer(id, dto.getTargetId(), amount, null, null);
+            });
+            log.debug("Операция над кошельком с ID {} записана в журнал", id);
+            return updated;
         }
 
-        Wallet wallet = walletRepository.findById(id).orElseThrow(() -> new WalletNotFoundException(id));
+        WalletDto updated = switch (dto.getType()) {
+            case WITHDRAW -> applied(id, OperationType.WITHDRAW, amount, withdraw(id, amount));
+            case DEPOSIT -> applied(id, OperationType.DEPOSIT, amount, depositChecked(id, amount));
+            case TRANSFER -> transfer(id, dto.getTargetId(), amount);
+        };
 
         log.debug("Операция над кошельком с ID {} успешно проведена", id);
-        return modelMapper.map(wallet, WalletDto.class);
+        return updated;
+    }
+
+    /**
+     * Пополнение кошелька: в случайную часть баланса, если баланс разбит на части, иначе в строку кошелька
+     * @param id кошелька
+     * @param amount сумма пополнения в копейках
+     * @return результат запроса
+     */
+    private WalletBalanceView deposit(UUID id, long amount) {
+        int stripe = stripeService.pickStripe(id);
+        if (stripe >= 0) {
+            Optional<WalletBalanceView> result = walletRepository.depositToStripe(id, stripe, amount);
+            if (result.isPresent()) {
+                return result.get();
+            }
+            // части кошелька изменены на другом узле
+            log.debug("Часть {} кошелька с ID {} не найдена, пополнение через строку кошелька", stripe, id);
+        }
+        return walletRepository.deposit(id, amount)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+    }
+
+    /**
+     * Пополнение кошелька с переводом переполнения BIGINT в БД в ошибку запроса, как у {@link MinorUnits#add}.
+     * Баланс до пополнения не читается, поэтому переполнение обнаруживает сам UPDATE.
+     */
+    private WalletBalanceView depositChecked(UUID id, long amount) {
+        try {
+            return deposit(id, amount);
+        } catch (DataIntegrityViolationException e) {
+            if (e.getMostSpecificCause() instanceof SQLException sql
+                    && MinorUnits.OUT_OF_RANGE_SQL_STATE.equals(sql.getSQLState())) {
+                throw new InvalidRequestException(MinorUnits.OVERFLOW);
+            }
+            throw e;
+        }
     }
 
     /**
-     * Получение баланса кошелька
+     * Списание с кошелька.
+     * Если в строке кошелька средств недостаточно, но с учетом частей баланса хватает,
+     * части переносятся в строку кошелька под блокировкой и списание повторяется.
+     * @param id кошелька
+     * @param amount сумма списания в копейках
+     * @return результат запроса
+     */
+    private WalletBalanceView withdraw(UUID id, long amount) {
+        WalletBalanceView result = walletRepository.withdraw(id, amount)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+        if (!result.getApplied() && result.getAmount() >= amount) {
+            walletJdbcRepository.lockBalances(List.of(id));
+            result = walletRepository.withdraw(id, amount)
+                    .orElseThrow(() -> new WalletNotFoundException(id));
+        }
+        return result;
+    }
+
+    /**
+     * Проверка результата атомарного UPDATE и запись операции в историю
+     * @param id кошелька
+     * @param type пополнение или списание
+     * @param amount сумма операции в копейках
+     * @param result результат запроса
+     * @return обновленный кошелек
+     */
+    private WalletDto applied(UUID id, OperationType type, long amount, WalletBalanceView result) {
+        if (!result.getApplied()) {
+            // баланс на момент проверки получен тем же запросом
+            throw new InsufficientFundsException(id, result.getAmount(), amount);
+        }
+        historyService.record(type == OperationType.DEPOSIT
+                ? WalletHistoryEntry.deposit(id, amount, result.getAmount())
+                : WalletHistoryEntry.withdraw(id, amount, result.getAmount()));
+
+        eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id, result.getAmount(), result.getUpdatedAt()));
+        return WalletDto.builder().id(id).amount(MinorUnits.toDecimal(result.getAmount())).build();
+    }
+
+    /**
+     * Перевод между кошельками в текущей транзакции.
+     * Оба кошелька блокируются одним запросом в порядке возрастания ID, поэтому встречные переводы
+     * ждут друг друга, а не взаимоблокируются.
+     * @param fromId кошелек отправителя
+     * @param toId кошелек получателя
+     * @param amount сумма перевода в копейках
+     * @return обновленный кошелек отправителя
+     */
+    private WalletDto transfer(UUID fromId, UUID toId, long amount) {
+        Map<UUID, Long> balances = walletJdbcRepository.lockBalances(List.of(fromId, toId));
+
+        Long fromBalance = balances.get(fromId);
+        if (fromBalance == null) {
+            throw new WalletNotFoundException(fromId);
+        }
+        Long toBalance = balances.get(toId);
+        if (toBalance == null) {
+            throw new WalletNotFoundException(toId);
+        }
+        if (fromBalance < amount) {
+            throw new InsufficientFundsException(fromId, fromBalance, amount);
+        }
+
+        Map<UUID, Long> updated = new LinkedHashMap<>();
+        updated.put(fromId, fromBalance - amount);
+        updated.put(toId, MinorUnits.add(toBalance, amount));
+        historyService.record(WalletHistoryEntry.transfer(fromId, toId, amount, updated.get(fromId), updated.get(toId)));
+
+        for (WalletBalanceRow row : walletJdbcRepository.updateBalances(updated)) {
+            eventPublisher.publishEvent(WalletBalanceChangedEvent.local(row.id(), row.amount(), row.updatedAt()));
+        }
+        return WalletDto.builder().id(fromId).amount(MinorUnits.toDecimal(fromBalance - amount)).build();
+    }
+
+    /**
+     * Получение баланса кошелька.
+     * При включенном кэше баланс берется из кэша без обращения к БД.
      * @param id кошелька
      * @return WalletBalanceDto, содержащий данные о балансе
      */
-    @Transactional(readOnly = true)
     public WalletBalanceDto getBalance(UUID id) {
         log.debug("Получение баланса кошелька с ID: {}", id);
-        Wallet wallet = walletRepository.findById(id).
-                orElseThrow(() -> new WalletNotFoundException(id));
+        if (balanceCache.isEnabled()) {
+            return new WalletBalanceDto(MinorUnits.toDecimal(balanceCache.get(id, this::loadBalanceFromPrimary).amount()));
+        }
+        return new WalletBalanceDto(MinorUnits.toDecimal(loadBalance(id).amount()));
+    }
+
+    /**
+     * Чтение баланса кошелька из БД в обход кэша (в режиме журнала - по снимку и хвосту журнала,
+     * в режиме журнала отложенной записи - с неперенесенными пополнениями)
+     * @param id кошелька
+     * @return баланс и время его обновления
+     */
+    public WalletBalanceCache.CachedBalance loadBalance(UUID id) {
+        if (ledgerService.isEnabled()) {
+            return new WalletBalanceCache.CachedBalance(ledgerService.getBalance(id), null);
+        }
+        if (writeBehindService.isEnabled()) {
+            return new WalletBalanceCache.CachedBalance(writeBehindService.getBalance(id), null);
+        }
+        WalletBalanceView balance = walletRepository.findBalanceById(id)
+                .orElseThrow(() -> new WalletNotFoundException(id));
+        return new WalletBalanceCache.CachedBalance(balance.getAmount(), balance.getUpdatedAt());
+    }
+
+    /**
+     * Чтение баланса кошелька с основного сервера в обход реплик.
+     * Используется для значений, которые хранятся после чтения (кэш, подписки): баланс с отстающей реплики
+     * оставался бы в них до следующего изменения.
+     * @param id кошелька
+     * @return баланс и время его обновления
+     */
+    public WalletBalanceCache.CachedBalance loadBalanceFromPrimary(UUID id) {
+        return ReplicaRoutingDataSource.readFromPrimary(() -> loadBalance(id));
+    }
+
+    /**
+     * Постраничное получение кошельков (keyset-пагинация по ID).
+     * Балансы читаются из wallets и частей: в режимах журнала операций и журнала отложенной записи
+     * они не учитывают еще не перенесенные операции.
+     * @param cursor курсор, полученный с предыдущей страницей, либо null для первой страницы
+     * @param limit размер страницы, либо null для размера по умолчанию
+     * @return страница кошельков и курсор следующей страницы
+     */
+    @Transactional(readOnly = true)
+    public WalletPageDto getPage(String cursor, Integer limit) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size < 1 || size > maxPageSize) {
+            throw new InvalidRequestException("Размер страницы должен быть от 1 до " + maxPageSize);
+        }
+        log.debug("Получение страницы кошельков, размер: {}", size);
+
+        // запрашивается на одну запись больше, чтобы узнать, есть ли следующая страница
+        Limit fetch = Limit.of(size + 1);
+        List<Wallet> wallets = cursor == null
+                ? walletRepository.findAllByOrderByIdAsc(fetch)
+                : walletRepository.findByIdGreaterThanOrderByIdAsc(decodeCursor(cursor), fetch);
 
-        return modelMapper.map(wallet, WalletBalanceDto.class);
+        String nextCursor = null;
+        if (wallets.size() > size) {
+            wallets = wallets.subList(0, size);
+            nextCursor = encodeCursor(wallets.get(size - 1).getId());
+        }
+
+        // к балансам кошельков, разбитых на части, добавляются суммы частей
+        Map<UUID, Long> stripeTotals = wallets.isEmpty() ? Map.of() : walletJdbcRepository.findStripeTotals(
+                wallets.stream().map(Wallet::getId).toList());
+        List<WalletDto> items = wallets.stream()
+                .map(wallet -> new WalletDto(wallet.getId(),
+                        MinorUnits.toDecimal(wallet.getAmount() + stripeTotals.getOrDefault(wallet.getId(), 0L))))
+                .collect(Collectors.toList());
+        return new WalletPageDto(items, nextCursor);
     }
 
     /**
-     * Получение всех кошельков
-     * @return список всех кошельков
+     * Потоковая выгрузка всех кошельков в формате NDJSON (один JSON-объект на строку).
+     * Строки читаются курсором БД и пишутся в ответ по мере поступления. Балансы, как и в {@link #getPage},
+     * не учитывают еще не перенесенные операции журналов.
+     * @param out поток ответа
      */
     @Transactional(readOnly = true)
-    public List<WalletDto> getAll() {
-        log.debug("Получение всех кошельков");
-        List<Wallet> wallets = walletRepository.findAll();
+    public void streamAll(OutputStream out) throws IOException {
+        log.debug("Потоковая выгрузка всех кошельков");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            int[] written = {0};
+            walletJdbcRepository.forEachWallet(streamFetchSize, wallet -> {
+                try {
+                    generator.writeObject(wallet);
+                    if (++written[0] % streamFetchSize == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (written[0] > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
 
-        return wallets.stream().map(wallet ->
-                modelMapper.map(wallet, WalletDto.class)).
-                collect(Collectors.toList());
+    static String encodeCursor(UUID id) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static UUID decodeCursor(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != 16) {
+                throw new IllegalArgumentException();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Некорректный курсор страницы");
+        }
     }
 }
@@ -0,0 +1,119 @@
+package ru.example.itktest.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.exception.InvalidRequestException;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.WalletJdbcRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Разбиение баланса горячих кошельков на части (wallet_stripes), по аналогии с LongAdder.
+ * <p>
+ * Пополнение такого кошелька увеличивает случайную часть и не трогает строку кошелька, поэтому пополнения
+ * разных частей не ждут друг друга. Баланс - это сумма в строке кошелька плюс суммы частей. Списание
+ * сначала проводится из строки кошелька, а если там не хватает средств, части переносятся в строку
+ * кошелька под блокировкой. Части не бывают отрицательными, поэтому баланс не уходит в минус.
+ * <p>
+ * Список кошельков с частями хранится в памяти и периодически перечитывается из БД. Это только подсказка
+ * для выбора пути пополнения: если часть уже удалена, пополнение проводится через строку кошелька.
+ */
+@Slf4j
+@Service
+public class WalletStripeService {
+    private final WalletJdbcRepository walletJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WalletLedgerService ledgerService;
+
+    /**
+     * Количество частей по ID кошелька
+     */
+    private final Map<UUID, Integer> stripes = new ConcurrentHashMap<>();
+
+    /**
+     * Максимальное количество частей одного кошелька
+     */
+    @Value("${wallet.stripes.max-count:64}")
+    private int maxCount;
+
+    public WalletStripeService(WalletJdbcRepository walletJdbcRepository,
+                               TransactionTemplate transactionTemplate,
+                               WalletLedgerService ledgerService) {
+        this.walletJdbcRepository = walletJdbcRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.ledgerService = ledgerService;
+    }
+
+    /**
+     * Разбит ли баланс кошелька на части
+     * @param id кошелька
+     */
+    public boolean isStriped(UUID id) {
+        return !stripes.isEmpty() && stripes.containsKey(id);
+    }
+
+    /**
+     * Выбор части для пополнения
+     * @param id кошелька
+     * @return номер случайной части, либо -1, если баланс кошелька не разбит
+     */
+    public int pickStripe(UUID id) {
+        Integer count = stripes.isEmpty() ? null : stripes.get(id);
+        return count == null ? -1 : ThreadLocalRandom.current().nextInt(count);
+    }
+
+    /**
+     * Изменение количества частей баланса без остановки операций.
+     * Части переносятся в строку кошелька под блокировкой и заменяются новыми пустыми частями.
+     * Пополнения, выбравшие удаленную часть, проводятся через строку кошелька.
+     * @param id кошелька
+     * @param count новое количество частей; 1 - убрать разбиение
+     * @return кошелек с текущим балансом
+     */
+    public WalletDto restripe(UUID id, int count) {
+        if (count < 1 || count > maxCount) {
+            throw new InvalidRequestException("Количество частей баланса должно быть от 1 до " + maxCount);
+        }
+        if (ledgerService.isEnabled()) {
+            throw new InvalidRequestException("Разбиение баланса недоступно в режиме журнала операций");
+        }
+        log.debug("Разбиение баланса кошелька с ID {} на {} частей", id, count);
+
+        Long balance = transactionTemplate.execute(status -> {
+            Long locked = walletJdbcRepository.lockBalances(List.of(id)).get(id);
+            if (locked == null) {
+                throw new WalletNotFoundException(id);
+            }
+            // части, пополненные после переноса при блокировке, переносятся при удалении
+            return locked + walletJdbcRepository.replaceStripes(id, count > 1 ? count : 0);
+        });
+
+        if (count > 1) {
+            stripes.put(id, count);
+        } else {
+            stripes.remove(id);
+        }
+        log.info("Баланс кошелька с ID {} разбит на {} частей", id, count);
+        return WalletDto.builder().id(id).amount(MinorUnits.toDecimal(balance)).build();
+    }
+
+    /**
+     * Перечитывание списка кошельков с частями (в том числе разбитых на других узлах)
+     */
+    @Scheduled(fixedDelayString = "${wallet.stripes.refresh-interval:PT5S}")
+    public void refresh() {
+        Map<UUID, Integer> counts = walletJdbcRepository.findStripeCounts();
+        stripes.keySet().retainAll(counts.keySet());
+        stripes.putAll(counts);
+    }
+}
@@ -0,0 +1,373 @@
+package ru.example.itktest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.exception.WalletNotFoundException;
+import ru.example.itktest.journal.WriteBehindJournal;
+import ru.example.itktest.model.MinorUnits;
+import ru.example.itktest.repository.WalletHistoryEntry;
+import ru.example.itktest.repository.WalletWriteBehindRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Пополнения через локальный журнал отложенной записи (write-behind).
+ * <p>
+ * Пополнение записывается в {@link WriteBehindJournal} и подтверждается клиенту после сброса журнала на диск,
+ * без транзакции в БД. Фоновая задача переносит записи в wallets крупными транзакциями; номер последней
+ * перенесенной записи сохраняется в той же транзакции, поэтому после перезапуска записи применяются ровно один раз.
+ * <p>
+ * Неперенесенные суммы хранятся в памяти по кошелькам вместе с номерами записей. Баланс - это баланс из БД
+ * плюс суммы записей с номерами больше примененного, прочитанного тем же запросом, и не больше сброшенного
+ * на диск: пополнение, которое еще может быть потеряно, в балансе не видно. Удаление перенесенных
+ * записей из памяти отмечается счетчиком (seqlock), и чтение, пересекшееся с удалением, повторяется.
+ * <p>
+ * Списания, переводы, резервы и пакеты проводятся как обычно, но сначала переносят записи журнала,
+ * если у их кошельков есть неперенесенные пополнения. Другие узлы видят пополнения после переноса.
+ */
+@Slf4j
+@Service
+public class WalletWriteBehindService {
+    private final WalletWriteBehindRepository writeBehindRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WalletHistoryService historyService;
+    private final boolean enabled;
+
+    @Value("${wallet.journal.dir:./data/journal}")
+    private Path directory;
+
+    @Value("${wallet.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    /**
+     * Максимальное количество записей журнала в одной транзакции переноса
+     */
+    @Value("${wallet.journal.flush-batch-size:10000}")
+    private int flushBatchSize;
+
+    /**
+     * Максимальное время ожидания сброса записи на диск
+     */
+    @Value("${wallet.journal.sync-timeout:PT5S}")
+    private Duration syncTimeout;
+
+    @Value("${wallet.ledger.enabled:false}")
+    private boolean ledgerEnabled;
+
+    /**
+     * Неперенесенные пополнения по ID кошелька
+     */
+    private final Map<UUID, PendingDeposits> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Счетчик удалений из pending: нечетный во время удаления
+     */
+    private final AtomicLong pruneVersion = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Counter flushFailures;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private WriteBehindJournal journal;
+    private volatile long appliedSeq;
+
+    public WalletWriteBehindService(WalletWriteBehindRepository writeBehindRepository,
+                                    TransactionTemplate transactionTemplate,
+                                    ApplicationEventPublisher eventPublisher,
+                                    WalletHistoryService historyService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${wallet.journal.enabled:false}") boolean enabled) {
+        this.writeBehindRepository = writeBehindRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.historyService = historyService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.flushFailures = Counter.builder("wallet.journal.flush.failures")
+                .description("Неудачные переносы записей журнала отложенной записи")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Открытие журнала и восстановление неперенесенных записей
+     */
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            return;
+        }
+        if (ledgerEnabled) {
+            throw new IllegalStateException("Журнал отложенной записи несовместим с wallet.ledger.enabled=true");
+        }
+        try {
+            journal = WriteBehindJournal.open(directory, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал " + directory, e);
+        }
+        appliedSeq = writeBehindRepository.findAppliedSeq(journal.getJournalId());
+        long durableSeq = journal.getDurableSeq();
+        if (durableSeq < appliedSeq) {
+            throw new IllegalStateException("Журнал " + directory + " отстает от примененных записей: "
+                    + durableSeq + " < " + appliedSeq);
+        }
+        journal.read(appliedSeq + 1, durableSeq, entry -> addPending(entry.walletId(), entry.seq(), entry.amount()));
+        log.info("Восстановлено {} неперенесенных записей журнала", durableSeq - appliedSeq);
+        Gauge.builder("wallet.journal.lag", this, service -> service.journal.getDurableSeq() - service.appliedSeq)
+                .description("Сброшенные на диск, но не перенесенные в БД записи журнала")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Перенос оставшихся записей и закрытие журнала
+     */
+    @PreDestroy
+    void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Записи журнала не перенесены при остановке и будут применены после перезапуска", e);
+        }
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пополнение через журнал.
+     * Переполнение проверяется под блокировкой добавления в журнал по балансу из БД и всем неперенесенным
+     * пополнениям кошелька, включая еще не сброшенные на диск, поэтому конкурентные пополнения не могут вместе
+     * записать в журнал сумму, которую перенос не сможет зачислить.
+     * Возвращаемый баланс посчитан на момент записи и может не учитывать конкурентные пополнения,
+     * поэтому событие публикуется без суммы и только инвалидирует кэш.
+     * @param id кошелька
+     * @param amount сумма пополнения в копейках
+     * @return кошелек с балансом после пополнения
+     */
+    public WalletDto deposit(UUID id, long amount) {
+        long[] balance = new long[1];
+        long seq;
+        while (true) {
+            long version = pruneVersion.get();
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            WalletWriteBehindRepository.JournalBalance stored = writeBehindRepository.findBalance(id, journal.getJournalId())
+                    .orElseThrow(() -> new WalletNotFoundException(id));
+            try {
+                seq = journal.append(id, amount, appended -> {
+                    PendingDeposits deposits = pending.get(id);
+                    long pendingAmount = deposits == null ? 0 : deposits.sum(stored.appliedSeq(), Long.MAX_VALUE);
+                    // перенос после чтения баланса: перенесенные записи уже удалены из pending, а в stored их нет
+                    if (pruneVersion.get() != version) {
+                        throw StaleBalanceException.INSTANCE;
+                    }
+                    balance[0] = MinorUnits.add(MinorUnits.add(stored.amount(), pendingAmount), amount);
+                    addPending(id, appended, amount);
+                });
+                break;
+            } catch (StaleBalanceException e) {
+                // баланс перечитывается
+            }
+        }
+        journal.awaitDurable(seq, syncTimeout);
+        eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id));
+        return WalletDto.builder().id(id).amount(MinorUnits.toDecimal(balance[0])).build();
+    }
+
+    /**
+     * Баланс кошелька с учетом неперенесенных пополнений
+     * @param id кошелька
+     * @return баланс в копейках
+     */
+    public long getBalance(UUID id) {
+        while (true) {
+            long version = pruneVersion.get();
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            WalletWriteBehindRepository.JournalBalance balance = writeBehindRepository.findBalance(id, journal.getJournalId())
+                    .orElseThrow(() -> new WalletNotFoundException(id));
+            // номер сброшенной записи читается после баланса из БД, поэтому не меньше примененного
+            long durableSeq = journal.getDurableSeq();
+            PendingDeposits deposits = pending.get(id);
+            long pendingAmount = deposits == null ? 0 : deposits.sum(balance.appliedSeq(), durableSeq);
+            if (pruneVersion.get() == version) {
+                return balance.amount() + pendingAmount;
+            }
+        }
+    }
+
+    /**
+     * Перенос записей журнала, если у кошельков есть неперенесенные пополнения.
+     * Вызывается перед операциями, проверяющими баланс в БД, вне их транзакции.
+     * @param ids кошельков
+     */
+    public void flushIfPending(UUID... ids) {
+        flushIfPending(Arrays.asList(ids));
+    }
+
+    public void flushIfPending(Collection<UUID> ids) {
+        if (!enabled) {
+            return;
+        }
+        for (UUID id : ids) {
+            if (id != null && pending.containsKey(id)) {
+                flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Перенос всех сброшенных на диск записей в wallets порциями по wallet.journal.flush-batch-size,
+     * каждая порция в своей транзакции
+     */
+    @Scheduled(fixedDelayString = "${wallet.journal.flush-interval:PT1S}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            long durableSeq;
+            while ((durableSeq = journal.getDurableSeq()) > appliedSeq) {
+                long upTo = Math.min(durableSeq, appliedSeq + flushBatchSize);
+                Map<UUID, Long> totals = new HashMap<>();
+                List<WalletHistoryEntry> history = new ArrayList<>();
+                journal.read(appliedSeq + 1, upTo, entry -> {
+                    totals.merge(entry.walletId(), entry.amount(), Long::sum);
+                    history.add(WalletHistoryEntry.deposit(entry.walletId(), entry.amount(), null));
+                });
+
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        writeBehindRepository.apply(journal.getJournalId(), upTo, totals);
+                        // пополнения попадают в историю при переносе, баланс после каждого из них не известен
+                        historyService.record(history);
+                        // уведомление других узлов; локальный баланс с учетом журнала не меняется
+                        totals.keySet().forEach(id -> eventPublisher.publishEvent(WalletBalanceChangedEvent.local(id)));
+                    });
+                } catch (RuntimeException e) {
+                    // порция повторяется следующим переносом; рост wallet.journal.lag показывает, что перенос стоит
+                    flushFailures.increment();
+                    log.error("Не удалось перенести записи журнала {}..{}", appliedSeq + 1, upTo, e);
+                    throw e;
+                }
+                appliedSeq = upTo;
+                prune(totals.keySet(), upTo);
+                journal.release(upTo);
+                log.debug("Перенесены записи журнала до {} по {} кошелькам", upTo, totals.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void addPending(UUID id, long seq, long amount) {
+        pending.compute(id, (key, deposits) -> {
+            PendingDeposits updated = deposits == null ? new PendingDeposits() : deposits;
+            updated.add(seq, amount);
+            return updated;
+        });
+    }
+
+    private void prune(Collection<UUID> ids, long upToSeq) {
+        pruneVersion.incrementAndGet();
+        try {
+            for (UUID id : ids) {
+                pending.computeIfPresent(id, (key, deposits) -> deposits.removeUpTo(upToSeq) ? null : deposits);
+            }
+        } finally {
+            pruneVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Баланс, прочитанный для проверки переполнения, устарел из-за конкурентного переноса
+     */
+    private static final class StaleBalanceException extends RuntimeException {
+        private static final StaleBalanceException INSTANCE = new StaleBalanceException();
+
+        private StaleBalanceException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Неперенесенные пополнения одного кошелька в порядке номеров записей
+     */
+    private static final class PendingDeposits {
+        private long[] seqs = new long[4];
+        private long[] amounts = new long[4];
+        private int from;
+        private int to;
+
+        synchronized void add(long seq, long amount) {
+            if (to == seqs.length) {
+                int size = to - from;
+                int capacity = size * 2 > seqs.length ? seqs.length * 2 : seqs.length;
+                seqs = Arrays.copyOfRange(seqs, from, from + capacity);
+                amounts = Arrays.copyOfRange(amounts, from, from + capacity);
+                from = 0;
+                to = size;
+            }
+            seqs[to] = seq;
+            amounts[to] = amount;
+            to++;
+        }
+
+        /**
+         * Сумма пополнений с номерами из (afterSeq, upToSeq]
+         */
+        synchronized long sum(long afterSeq, long upToSeq) {
+            long sum = 0;
+            for (int i = to - 1; i >= from && seqs[i] > afterSeq; i--) {
+                if (seqs[i] <= upToSeq) {
+                    sum += amounts[i];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @return true, если неперенесенных пополнений не осталось
+         */
+        synchronized boolean removeUpTo(long seq) {
+            while (from < to && seqs[from] <= seq) {
+                from++;
+            }
+            return from == to;
+        }
+    }
+}
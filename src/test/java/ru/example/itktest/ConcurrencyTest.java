@@ -71,7 +71,7 @@ public class ConcurrencyTest {
         List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
 
         Wallet wallet = walletRepository.save(
-                Wallet.builder().amount(BigDecimal.ZERO).build());
+                Wallet.builder().amount(0).build());
 
         int threads = 50;
         int operations = 200;
@@ -111,6 +111,6 @@ public class ConcurrencyTest {
         // массив ошибок пуст
         assertTrue(errors.isEmpty());
         // баланс на счету = 200
-        assertEquals(new BigDecimal("200"), updated.getAmount());
+        assertEquals(200_00, updated.getAmount());
     }
 }
@@ -0,0 +1,20 @@
+package ru.example.itktest;
+
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Тестирование эндпоинтов неблокирующего стека (профиль reactive) на сценариях {@link WalletControllerTest}
+ */
+@ActiveProfiles("reactive")
+class ReactiveWalletControllerTest extends WalletControllerTest {
+
+    @DynamicPropertySource
+    static void configureR2dbc(DynamicPropertyRegistry registry) {
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://" + postgres.getHost() + ":"
+                + postgres.getFirstMappedPort() + "/" + postgres.getDatabaseName());
+        registry.add("spring.r2dbc.username", postgres::getUsername);
+        registry.add("spring.r2dbc.password", postgres::getPassword);
+    }
+}
@@ -0,0 +1,189 @@
+package ru.example.itktest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.scheduler.Schedulers;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.event.WalletBalanceChangedEvent;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.model.Wallet;
+import ru.example.itktest.repository.WalletRepository;
+import ru.example.itktest.service.WalletBalanceCache;
+import ru.example.itktest.service.WalletBalanceSubscriptions;
+import ru.example.itktest.service.WalletService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Тест кэша балансов и межузловых уведомлений.
+ * Изменения в обход приложения имитируют другой узел: кэш не должен их видеть, пока не придет уведомление,
+ * а подписчики на баланс получают изменение из уведомления.
+ */
+@SpringBootTest(properties = {
+        "wallet.cache.enabled=true",
+        "wallet.notify.enabled=true"
+})
+@Testcontainers
+class WalletBalanceCacheTest {
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private WalletBalanceCache balanceCache;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private WalletBalanceSubscriptions subscriptions;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    /**
+     * Ожидание подписки на уведомления: при подписке кэш очищается целиком
+     */
+    @BeforeEach
+    void awaitListener() throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline && jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_activity WHERE query LIKE 'LISTEN%'", Long.class) == 0) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * После операции баланс берется из кэша: изменение строки в обход приложения не видно
+     */
+    @Test
+    void balance_afterWrite_shouldBeServedFromCache() {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(0).build());
+
+        walletService.walletOperation(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("100")));
+        setAmount(wallet.getId(), 0);
+
+        assertEquals(new BigDecimal("100.00"), walletService.getBalance(wallet.getId()).getAmount());
+    }
+
+    /**
+     * Уведомление другого узла удаляет запись из кэша, и следующий запрос читает баланс из БД
+     */
+    @Test
+    void remoteNotification_shouldInvalidateCachedBalance() throws InterruptedException {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(10000).build());
+        assertEquals(new BigDecimal("100.00"), walletService.getBalance(wallet.getId()).getAmount());
+
+        setAmount(wallet.getId(), 50000);
+        assertEquals(new BigDecimal("100.00"), walletService.getBalance(wallet.getId()).getAmount());
+
+        jdbcTemplate.query("SELECT pg_notify('wallet_changes', ?)", rs -> { },
+                wallet.getId() + ",50000,other-node");
+
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (new BigDecimal("100.00").equals(walletService.getBalance(wallet.getId()).getAmount())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(new BigDecimal("500.00"), walletService.getBalance(wallet.getId()).getAmount());
+    }
+
+    /**
+     * Событие, пришедшее позже более нового, не перезаписывает баланс в кэше
+     */
+    @Test
+    void lateEvent_shouldNotOverwriteNewerBalance() {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(0).build());
+        LocalDateTime now = LocalDateTime.now();
+
+        balanceCache.onBalanceChanged(WalletBalanceChangedEvent.local(wallet.getId(), 20000, now));
+        balanceCache.onBalanceChanged(WalletBalanceChangedEvent.local(wallet.getId(), 10000, now.minusSeconds(1)));
+
+        assertEquals(new BigDecimal("200.00"), walletService.getBalance(wallet.getId()).getAmount());
+    }
+
+    /**
+     * Подписчик получает изменение баланса, проведенное другим узлом
+     */
+    @Test
+    void subscription_shouldReceiveRemoteChange() {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(1000).build());
+
+        List<BigDecimal> balances = subscriptions.subscribe(wallet.getId())
+                .filter(event -> "balance".equals(event.event()))
+                .map(event -> event.data().getAmount())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(amount -> {
+                    if (amount.compareTo(BigDecimal.TEN) == 0) {
+                        setAmount(wallet.getId(), 2500);
+                        jdbcTemplate.query("SELECT pg_notify('wallet_changes', ?)", rs -> { },
+                                wallet.getId() + ",2500,other-node");
+                    }
+                })
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(2, balances.size());
+        assertEquals(0, BigDecimal.TEN.compareTo(balances.get(0)));
+        assertEquals(0, new BigDecimal("25").compareTo(balances.get(1)));
+    }
+
+    /**
+     * Опоздавшее уведомление другого узла со старым балансом не отправляется подписчикам:
+     * событие только запускает перечитывание баланса
+     */
+    @Test
+    void subscription_lateRemoteNotification_shouldNotPushStaleBalance() {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(1000).build());
+
+        List<BigDecimal> balances = subscriptions.subscribe(wallet.getId())
+                .filter(event -> "balance".equals(event.event()))
+                .map(event -> event.data().getAmount())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(amount -> {
+                    if (amount.compareTo(BigDecimal.TEN) == 0) {
+                        jdbcTemplate.query("SELECT pg_notify('wallet_changes', ?)", rs -> { },
+                                wallet.getId() + ",500,other-node");
+                        walletService.walletOperation(
+                                new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("5")));
+                    }
+                })
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(2, balances.size());
+        assertEquals(0, BigDecimal.TEN.compareTo(balances.get(0)));
+        assertEquals(0, new BigDecimal("15").compareTo(balances.get(1)));
+    }
+
+    private void setAmount(UUID walletId, long amount) {
+        jdbcTemplate.update("UPDATE wallets SET amount = ? WHERE id = ?", amount, walletId);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.example.itktest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.binary.WalletBinaryClient;
+import ru.example.itktest.binary.WalletBinaryException;
+import ru.example.itktest.binary.WalletBinaryProtocol;
+import ru.example.itktest.binary.WalletBinaryResponse;
+import ru.example.itktest.binary.WalletBinaryServer;
+import ru.example.itktest.model.OperationType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тест двоичного протокола: те же операции и ошибки, что и у REST, и конвейерные запросы по одному соединению
+ */
+@SpringBootTest(properties = {
+        "wallet.binary.enabled=true",
+        "wallet.binary.port=0",
+        "wallet.binary.max-in-flight=8"
+})
+@Testcontainers
+class WalletBinaryServerTest {
+    @Autowired
+    private WalletBinaryServer server;
+
+    private WalletBinaryClient client;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @BeforeEach
+    void connect() throws IOException {
+        client = WalletBinaryClient.connect("127.0.0.1", server.getPort());
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void operations_shouldMatchRestSemantics() {
+
+        UUID id = client.create().walletId();
+
+        assertEquals(100_50, client.operate(id, OperationType.DEPOSIT, 100_50).amount());
+        assertEquals(50_50, client.operate(id, OperationType.WITHDRAW, 50_00).amount());
+        assertEquals(50_50, client.balance(id).amount());
+
+        WalletBinaryException insufficient = assertThrows(WalletBinaryException.class,
+                () -> client.operate(id, OperationType.WITHDRAW, 1_000_00));
+        assertEquals(WalletBinaryProtocol.CONFLICT, insufficient.getStatus());
+
+        WalletBinaryException notFound = assertThrows(WalletBinaryException.class,
+                () -> client.balance(UUID.randomUUID()));
+        assertEquals(WalletBinaryProtocol.NOT_FOUND, notFound.getStatus());
+
+        WalletBinaryException invalid = assertThrows(WalletBinaryException.class,
+                () -> client.operate(id, OperationType.TRANSFER, 1_00));
+        assertEquals(WalletBinaryProtocol.BAD_REQUEST, invalid.getStatus());
+    }
+
+    /**
+     * 200 пополнений отправляются без ожидания ответов, больше предела незавершенных запросов соединения
+     */
+    @Test
+    void pipelinedOperations_shouldAllComplete() {
+
+        UUID id = client.create().walletId();
+
+        List<CompletableFuture<WalletBinaryResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            responses.add(client.operateAsync(id, OperationType.DEPOSIT, 1_00, null, null));
+        }
+        responses.forEach(CompletableFuture::join);
+
+        assertEquals(200_00, client.balance(id).amount());
+    }
+
+    @Test
+    void repeatedIdempotencyKey_shouldApplyOnce() {
+
+        UUID id = client.create().walletId();
+        String key = UUID.randomUUID().toString();
+
+        client.operate(id, OperationType.DEPOSIT, 10_00, null, key);
+        client.operate(id, OperationType.DEPOSIT, 10_00, null, key);
+
+        assertEquals(10_00, client.balance(id).amount());
+    }
+}
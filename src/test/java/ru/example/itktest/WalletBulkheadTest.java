@@ -0,0 +1,64 @@
+package ru.example.itktest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.config.BulkheadDataSource;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.service.WalletService;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тест ограничения одновременных обращений к БД (bulkhead).
+ * Запрос сверх лимита соединений должен ждать не дольше таймаута и завершаться ошибкой,
+ * после освобождения соединений запросы снова проходят.
+ */
+@SpringBootTest(properties = {
+        "wallet.bulkhead.enabled=true",
+        "wallet.bulkhead.permits=2",
+        "wallet.bulkhead.timeout=200ms"
+})
+@Testcontainers
+class WalletBulkheadTest {
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private DataSource dataSource;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Test
+    void requestsOverLimit_shouldTimeOut() throws Exception {
+        assertInstanceOf(BulkheadDataSource.class, dataSource);
+        WalletDto wallet = walletService.createWallet();
+
+        // все разрешения заняты
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+            assertThrows(CannotCreateTransactionException.class, () -> walletService.getBalance(wallet.getId()));
+        }
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(walletService.getBalance(wallet.getId()).getAmount()));
+    }
+}
@@ -13,7 +13,9 @@ import ru.example.itktest.dto.WalletOperationDto;
 import ru.example.itktest.model.OperationType;
 import ru.example.itktest.model.Wallet;
 import ru.example.itktest.repository.WalletRepository;
+import ru.example.itktest.exception.InsufficientFundsException;
 import ru.example.itktest.service.WalletService;
+import ru.example.itktest.service.WalletStripeService;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -22,6 +24,7 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -38,6 +41,8 @@ class WalletConcurrencyTest {
     private WalletService walletService;
     @Autowired
     private WalletRepository walletRepository;
+    @Autowired
+    private WalletStripeService walletStripeService;
 
     @Container
     static PostgreSQLContainer<?> postgres =
@@ -55,7 +60,7 @@ class WalletConcurrencyTest {
 
         Wallet wallet = walletRepository.save(
                 Wallet.builder()
-                        .amount(BigDecimal.ZERO)
+                        .amount(0)
                         .build()
         );
 
@@ -108,7 +113,194 @@ class WalletConcurrencyTest {
         assertTrue(errors.isEmpty(), "Возникшие ошибки: " + errors);
 
         Wallet updated = walletRepository.findById(wallet.getId()).orElseThrow();
-        // - баланс на счету = 200
-        assertEquals(new BigDecimal("200.00"), updated.getAmount());
+        // - баланс на счету = 200 (в копейках)
+        assertEquals(200_00, updated.getAmount());
+    }
+
+    /**
+     * Встречные переводы между двумя кошельками не должны взаимоблокироваться.
+     * Сумма балансов после всех переводов не меняется.
+     */
+    @Test
+    void concurrentOppositeTransfers_shouldNotDeadlock() throws Exception {
+
+        Wallet first = walletRepository.save(
+                Wallet.builder().amount(100000).build());
+        Wallet second = walletRepository.save(
+                Wallet.builder().amount(100000).build());
+
+        int threads = 50;
+        int operations = 200;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(operations);
+
+        // массив для ошибок
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < operations; i++) {
+            // четные переводы в одну сторону, нечетные - в другую
+            Wallet from = i % 2 == 0 ? first : second;
+            Wallet to = i % 2 == 0 ? second : first;
+
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+
+                    walletService.walletOperation(new WalletOperationDto(
+                            from.getId(),
+                            OperationType.TRANSFER,
+                            BigDecimal.ONE,
+                            to.getId()
+                    ));
+
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        doneLatch.await();
+        executor.shutdown();
+
+        assertTrue(errors.isEmpty(), "Возникшие ошибки: " + errors);
+
+        long total = walletRepository.findById(first.getId()).orElseThrow().getAmount()
+                + walletRepository.findById(second.getId()).orElseThrow().getAmount();
+        assertEquals(2000_00, total);
+    }
+
+    /**
+     * Пополнения и снятия кошелька, баланс которого разбит на части, с переразбиением во время операций.
+     * Баланс не должен уйти в минус и должен сходиться с количеством успешных снятий.
+     */
+    @Test
+    void stripedWallet_shouldKeepBalanceConsistent() throws Exception {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(5000).build());
+        walletStripeService.restripe(wallet.getId(), 8);
+
+        int threads = 50;
+        int deposits = 200;
+        int withdrawals = 300;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(deposits + withdrawals);
+
+        AtomicInteger insufficient = new AtomicInteger();
+        // массив для ошибок
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < deposits + withdrawals; i++) {
+            OperationType type = i % 5 < 2 ? OperationType.DEPOSIT : OperationType.WITHDRAW;
+            // переразбиение посреди операций
+            int restripe = i == (deposits + withdrawals) / 2 ? 4 : 0;
+
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+
+                    if (restripe > 0) {
+                        walletStripeService.restripe(wallet.getId(), restripe);
+                    }
+                    walletService.walletOperation(new WalletOperationDto(
+                            wallet.getId(),
+                            type,
+                            BigDecimal.ONE
+                    ));
+
+                } catch (InsufficientFundsException e) {
+                    insufficient.incrementAndGet();
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        doneLatch.await();
+        executor.shutdown();
+
+        assertTrue(errors.isEmpty(), "Возникшие ошибки: " + errors);
+
+        BigDecimal expected = new BigDecimal(50 + deposits - (withdrawals - insufficient.get()));
+        assertTrue(expected.signum() >= 0);
+        assertEquals(0, expected.compareTo(walletService.getBalance(wallet.getId()).getAmount()));
+
+        // после снятия разбиения весь баланс находится в строке кошелька
+        walletStripeService.restripe(wallet.getId(), 1);
+        Wallet updated = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(expected.movePointRight(2).longValueExact(), updated.getAmount());
+    }
+
+    /**
+     * Пополнения частей во время переразбиения не должны теряться:
+     * пополнение части, опустевшей после переноса, может успеть до удаления частей
+     */
+    @Test
+    void depositsDuringRestripe_shouldNotLoseMoney() throws Exception {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(0).build());
+        walletStripeService.restripe(wallet.getId(), 16);
+
+        int threads = 50;
+        int operations = 550;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(operations);
+
+        AtomicInteger deposited = new AtomicInteger();
+        // массив для ошибок
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < operations; i++) {
+            // каждая одиннадцатая задача - переразбиение на 8 или 16 частей
+            int restripe = i % 11 == 0 ? 8 + 8 * (i / 11 % 2) : 0;
+
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+
+                    if (restripe > 0) {
+                        walletStripeService.restripe(wallet.getId(), restripe);
+                    } else {
+                        walletService.walletOperation(new WalletOperationDto(
+                                wallet.getId(),
+                                OperationType.DEPOSIT,
+                                BigDecimal.ONE
+                        ));
+                        deposited.incrementAndGet();
+                    }
+
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        doneLatch.await();
+        executor.shutdown();
+
+        assertTrue(errors.isEmpty(), "Возникшие ошибки: " + errors);
+
+        walletStripeService.restripe(wallet.getId(), 1);
+        Wallet updated = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(deposited.get() * 100L, updated.getAmount());
     }
 }
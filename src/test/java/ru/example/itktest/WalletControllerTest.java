@@ -1,43 +1,64 @@
 package ru.example.itktest;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import org.springframework.core.ParameterizedTypeReference;
+
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.scheduler.Schedulers;
+import ru.example.itktest.dto.WalletBalanceDto;
+import ru.example.itktest.dto.WalletBulkCreateDto;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletHoldDto;
+import ru.example.itktest.dto.WalletHoldRequestDto;
 import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.dto.WalletOperationPageDto;
+import ru.example.itktest.model.HoldStatus;
+import ru.example.itktest.model.MinorUnits;
 import ru.example.itktest.model.OperationType;
 import ru.example.itktest.model.Wallet;
 import ru.example.itktest.repository.WalletRepository;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 
 /**
- * Тестирование эндпоинтов
+ * Тестирование эндпоинтов.
+ * Запросы выполняются через HTTP, поэтому те же сценарии проверяют и неблокирующий стек
+ * ({@link ReactiveWalletControllerTest}).
  */
-@SpringBootTest
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @Testcontainers
-@AutoConfigureMockMvc
+@AutoConfigureWebTestClient
 class WalletControllerTest {
     @Autowired
-    private MockMvc mockMvc;
+    private WebTestClient webTestClient;
     @Autowired
     private WalletRepository walletRepository;
     @Autowired
-    private ObjectMapper objectMapper;
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private Validator validator;
 
     @Container
     static PostgreSQLContainer<?> postgres =
@@ -54,98 +75,662 @@ class WalletControllerTest {
      * Создание кошелька
      */
     @Test
-    void createWallet_shouldReturn201() throws Exception {
+    void createWallet_shouldReturn201() {
 
-        mockMvc.perform(post("/api/v1/wallet/create"))
-                .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.id").exists())
-                .andExpect(jsonPath("$.amount").value(0));
+        webTestClient.post().uri("/api/v1/wallet/create")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").value(id -> assertEquals(7, UUID.fromString((String) id).version()))
+                .jsonPath("$.amount").isEqualTo(0);
     }
 
     /**
      * Внесение депозита
      */
     @Test
-    void deposit_shouldIncreaseBalance() throws Exception {
+    void deposit_shouldIncreaseBalance() {
 
         Wallet wallet = walletRepository.save(
-                Wallet.builder().amount(BigDecimal.ZERO).build());
+                Wallet.builder().amount(0).build());
 
         WalletOperationDto dto = new WalletOperationDto(
                 wallet.getId(),
                 OperationType.DEPOSIT,
                 new BigDecimal("100"));
 
-        mockMvc.perform(post("/api/v1/wallet")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(dto)))
-                .andExpect(status().isOk())
-                .andExpect(jsonPath("$.amount").value(100));
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(100);
     }
 
     /**
      * insufficient funds (недостаточно средств на балансе)
      */
     @Test
-    void withdraw_notEnoughMoney_shouldReturn409() throws Exception {
+    void withdraw_notEnoughMoney_shouldReturn409() {
 
         Wallet wallet = walletRepository.save(
-                Wallet.builder().amount(new BigDecimal("10")).build());
+                Wallet.builder().amount(1000).build());
 
         WalletOperationDto dto = new WalletOperationDto(
                 wallet.getId(),
                 OperationType.WITHDRAW,
                 new BigDecimal("100"));
 
-        mockMvc.perform(post("/api/v1/wallet")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(dto)))
-                .andExpect(status().isConflict());
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
     }
 
     /**
      * wallet not found (кошелек не найден)
      */
     @Test
-    void walletNotFound_shouldReturn404() throws Exception {
+    void walletNotFound_shouldReturn404() {
 
         WalletOperationDto dto = new WalletOperationDto(
                 UUID.randomUUID(),
                 OperationType.DEPOSIT,
                 new BigDecimal("100"));
 
-        mockMvc.perform(post("/api/v1/wallet")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(dto)))
-                .andExpect(status().isNotFound());
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isNotFound();
     }
 
     /**
      * invalid JSON (некорректный JSON)
      */
     @Test
-    void invalidJson_shouldReturn400() throws Exception {
+    void invalidJson_shouldReturn400() {
         String invalidJson = "{\"amount\":\"100\"}";
-        mockMvc.perform(post("/api/v1/wallet")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(invalidJson))
-                .andExpect(status().isBadRequest());
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(invalidJson)
+                .exchange()
+                .expectStatus().isBadRequest();
     }
 
     /**
      * validation error
      */
     @Test
-    void validationError_shouldReturn400() throws Exception {
+    void validationError_shouldReturn400() {
 
         WalletOperationDto dto = new WalletOperationDto(
                 null,
                 OperationType.DEPOSIT,
                 new BigDecimal("100"));
 
-        mockMvc.perform(post("/api/v1/wallet")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(dto)))
-                .andExpect(status().isBadRequest());
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Пополнение, после которого баланс выйдет за пределы BIGINT, отклоняется с 400
+     */
+    @Test
+    void deposit_overflow_shouldReturn400() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(Long.MAX_VALUE - 50).build());
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, BigDecimal.ONE))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo(MinorUnits.OVERFLOW);
+    }
+
+    /**
+     * Сумма с дробной частью меньше копейки отклоняется, а не округляется
+     */
+    @Test
+    void amountWithTooManyDecimals_shouldReturn400() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(0).build());
+
+        WalletOperationDto dto = new WalletOperationDto(
+                wallet.getId(),
+                OperationType.DEPOSIT,
+                new BigDecimal("0.005"));
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertBalance(wallet.getId(), 0);
+    }
+
+    /**
+     * Операция без суммы отклоняется с сообщением о поле, неизвестные поля тела игнорируются
+     */
+    @Test
+    void amountMissing_shouldReturn400WithFieldMessage() {
+
+        // сообщение @NotNull по умолчанию, как при проверке тела Bean Validation
+        String expected = validator.validateValue(WalletOperationDto.class, "amount", null)
+                .iterator().next().getMessage();
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {"valletId": "%s", "operationType": "DEPOSIT", "comment": {"text": "test"}}
+                        """.formatted(UUID.randomUUID()))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("amount: " + expected);
+    }
+
+    /**
+     * Постраничное получение кошельков
+     */
+    @Test
+    void getAll_shouldReturnPageWithCursor() {
+
+        walletRepository.save(Wallet.builder().amount(0).build());
+        walletRepository.save(Wallet.builder().amount(0).build());
+
+        webTestClient.get().uri("/api/v1/wallet?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.nextCursor").isNotEmpty();
+    }
+
+    /**
+     * invalid cursor (некорректный курсор страницы)
+     */
+    @Test
+    void getAll_invalidCursor_shouldReturn400() {
+
+        webTestClient.get().uri("/api/v1/wallet?cursor=not-a-cursor")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Пакет операций: результат по каждой операции
+     */
+    @Test
+    void batch_bestEffort_shouldReturnResultPerItem() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(1000).build());
+
+        List<WalletOperationDto> operations = List.of(
+                new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("5")),
+                new WalletOperationDto(wallet.getId(), OperationType.WITHDRAW, new BigDecimal("100")),
+                new WalletOperationDto(UUID.randomUUID(), OperationType.DEPOSIT, new BigDecimal("1")));
+
+        webTestClient.post().uri("/api/v1/wallet/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(operations)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.results[0].status").isEqualTo("APPLIED")
+                .jsonPath("$.results[0].amount").isEqualTo(15)
+                .jsonPath("$.results[1].status").isEqualTo("INSUFFICIENT_FUNDS")
+                .jsonPath("$.results[2].status").isEqualTo("NOT_FOUND");
+    }
+
+    /**
+     * Пакет операций в режиме ALL_OR_NOTHING откатывается целиком
+     */
+    @Test
+    void batch_allOrNothing_shouldRollBackOnFailure() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(1000).build());
+
+        List<WalletOperationDto> operations = List.of(
+                new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("5")),
+                new WalletOperationDto(wallet.getId(), OperationType.WITHDRAW, new BigDecimal("100")));
+
+        webTestClient.post().uri("/api/v1/wallet/batch?mode=ALL_OR_NOTHING")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(operations)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody()
+                .jsonPath("$.committed").isEqualTo(false)
+                .jsonPath("$.results[0].status").isEqualTo("ROLLED_BACK");
+
+        webTestClient.get().uri("/api/v1/wallet/" + wallet.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(10);
+    }
+
+    /**
+     * Массовое создание: созданные кошельки возвращаются потоком NDJSON
+     */
+    @Test
+    void bulkCreate_shouldStreamCreatedWallets() {
+
+        List<WalletDto> created = webTestClient.post().uri("/api/v1/wallet/bulk")
+                .bodyValue(new WalletBulkCreateDto(3, new BigDecimal("10.00"), null))
+                .exchange()
+                .expectStatus().isCreated()
+                .returnResult(WalletDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(3, created.size());
+        assertEquals(3, created.stream().map(WalletDto::getId).distinct().count());
+        // UUID версии 7 по умолчанию (wallet.id.strategy), возрастают в порядке создания
+        assertTrue(created.stream().allMatch(wallet -> wallet.getId().version() == 7));
+        assertTrue(created.get(0).getId().toString().compareTo(created.get(2).getId().toString()) < 0);
+        for (WalletDto wallet : created) {
+            assertEquals(0, new BigDecimal("10.00").compareTo(wallet.getAmount()));
+            assertBalance(wallet.getId(), 10);
+        }
+    }
+
+    /**
+     * Массовое создание: количество начальных балансов не совпадает с количеством кошельков
+     */
+    @Test
+    void bulkCreate_amountsMismatch_shouldReturn400() {
+
+        webTestClient.post().uri("/api/v1/wallet/bulk")
+                .bodyValue(new WalletBulkCreateDto(2, null, List.of(BigDecimal.ONE)))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Подписка на баланс: текущий баланс, затем новый после пополнения
+     */
+    @Test
+    void subscribe_shouldPushBalanceAfterDeposit() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(1000).build());
+
+        List<BigDecimal> balances = webTestClient.get().uri("/api/v1/wallet/" + wallet.getId() + "/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<WalletBalanceDto>>() {})
+                .getResponseBody()
+                .filter(event -> "balance".equals(event.event()))
+                .map(event -> event.data().getAmount())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(amount -> {
+                    if (amount.compareTo(BigDecimal.TEN) == 0) {
+                        webTestClient.post().uri("/api/v1/wallet")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("5")))
+                                .exchange()
+                                .expectStatus().isOk();
+                    }
+                })
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(2, balances.size());
+        assertEquals(0, BigDecimal.TEN.compareTo(balances.get(0)));
+        assertEquals(0, new BigDecimal("15").compareTo(balances.get(1)));
+
+        webTestClient.get().uri("/api/v1/wallet/" + UUID.randomUUID() + "/events")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * Перевод между кошельками
+     */
+    @Test
+    void transfer_shouldMoveFundsBetweenWallets() {
+
+        Wallet from = walletRepository.save(
+                Wallet.builder().amount(10000).build());
+        Wallet to = walletRepository.save(
+                Wallet.builder().amount(0).build());
+
+        WalletOperationDto dto = new WalletOperationDto(
+                from.getId(),
+                OperationType.TRANSFER,
+                new BigDecimal("40"),
+                to.getId());
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(60);
+
+        webTestClient.get().uri("/api/v1/wallet/" + to.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(40);
+    }
+
+    /**
+     * Перевод без кошелька получателя
+     */
+    @Test
+    void transfer_withoutTarget_shouldReturn400() {
+
+        WalletOperationDto dto = new WalletOperationDto(
+                UUID.randomUUID(),
+                OperationType.TRANSFER,
+                new BigDecimal("40"));
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dto)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * История операций: все проведенные операции от новых к старым, по страницам
+     */
+    @Test
+    void operations_shouldPageHistoryNewestFirst() {
+
+        Wallet from = walletRepository.save(
+                Wallet.builder().amount(10000).build());
+        Wallet to = walletRepository.save(
+                Wallet.builder().amount(0).build());
+
+        for (WalletOperationDto dto : List.of(
+                new WalletOperationDto(from.getId(), OperationType.DEPOSIT, new BigDecimal("50")),
+                new WalletOperationDto(from.getId(), OperationType.WITHDRAW, new BigDecimal("20")),
+                new WalletOperationDto(from.getId(), OperationType.TRANSFER, new BigDecimal("30"), to.getId()))) {
+            webTestClient.post().uri("/api/v1/wallet")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(dto)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+        // списание сверх баланса не проводится и в историю не попадает
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletOperationDto(from.getId(), OperationType.WITHDRAW, new BigDecimal("1000")))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        WalletOperationPageDto first = webTestClient.get().uri("/api/v1/wallet/" + from.getId() + "/operations?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(WalletOperationPageDto.class)
+                .returnResult()
+                .getResponseBody();
+        assertEquals(2, first.getItems().size());
+        assertEquals(OperationType.TRANSFER, first.getItems().get(0).type());
+        assertEquals(0, new BigDecimal("-30").compareTo(first.getItems().get(0).amount()));
+        assertEquals(0, new BigDecimal("100").compareTo(first.getItems().get(0).balance()));
+        assertEquals(to.getId(), first.getItems().get(0).counterpartyId());
+        assertEquals(OperationType.WITHDRAW, first.getItems().get(1).type());
+        assertTrue(first.getNextCursor() != null);
+
+        webTestClient.get().uri("/api/v1/wallet/" + from.getId() + "/operations?limit=2&cursor=" + first.getNextCursor())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.items[0].type").isEqualTo("DEPOSIT")
+                .jsonPath("$.items[0].balance").isEqualTo(150)
+                .jsonPath("$.nextCursor").doesNotExist();
+
+        webTestClient.get().uri("/api/v1/wallet/" + to.getId() + "/operations")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.items[0].amount").isEqualTo(30)
+                .jsonPath("$.items[0].counterpartyId").isEqualTo(from.getId().toString());
+
+        webTestClient.get().uri("/api/v1/wallet/" + UUID.randomUUID() + "/operations")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/api/v1/wallet/" + from.getId() + "/operations?cursor=broken")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Повтор запроса с тем же ключом идемпотентности не проводит операцию второй раз
+     */
+    @Test
+    void idempotencyKey_repeatedRequest_shouldApplyOnce() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(0).build());
+
+        WalletOperationDto dto = new WalletOperationDto(
+                wallet.getId(),
+                OperationType.DEPOSIT,
+                new BigDecimal("100"));
+        String key = UUID.randomUUID().toString();
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.post().uri("/api/v1/wallet")
+                    .header("Idempotency-Key", key)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(dto)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.amount").isEqualTo(100);
+        }
+
+        webTestClient.get().uri("/api/v1/wallet/" + wallet.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(100);
+    }
+
+    /**
+     * Ключ, сохраненный другим узлом или до перезапуска: отпечаток вычислен вне JVM приложения
+     */
+    @Test
+    void idempotencyKey_persistedEarlier_shouldReturnStoredResult() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(0).build());
+        String key = UUID.randomUUID().toString();
+        jdbcTemplate.update("""
+                INSERT INTO wallet_idempotency_keys (idempotency_key, wallet_id, request_digest, amount, created_at)
+                VALUES (?, ?, sha256(convert_to(? || '|DEPOSIT|10000|', 'UTF8')), 10000, localtimestamp)
+                """, key, wallet.getId(), wallet.getId().toString());
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .header("Idempotency-Key", key)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("100.00")))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(100);
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .header("Idempotency-Key", key)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("200")))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertBalance(wallet.getId(), 0);
+    }
+
+    /**
+     * Метрики операций и самые часто используемые кошельки
+     */
+    @Test
+    void metrics_shouldReportOperationsAndHotWallets() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(0).build());
+
+        WalletOperationDto dto = new WalletOperationDto(
+                wallet.getId(),
+                OperationType.DEPOSIT,
+                new BigDecimal("1"));
+
+        for (int i = 0; i < 3; i++) {
+            webTestClient.post().uri("/api/v1/wallet")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(dto)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+
+        webTestClient.get().uri("/actuator/hotwallets?limit=1000")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[?(@.walletId == '" + wallet.getId() + "')]").exists();
+        webTestClient.get().uri("/actuator/hotwallets?limit=-1")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.get().uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("wallet_operations_seconds_count{outcome=\"success\",type=\"DEPOSIT\"")));
+    }
+
+    /**
+     * Резерв уменьшает доступный баланс, подтверждение его не меняет, отмена подтвержденного резерва - 409
+     */
+    @Test
+    void hold_capture_shouldWithdrawOnce() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(10000).build());
+
+        WalletHoldDto hold = webTestClient.post().uri("/api/v1/wallet/" + wallet.getId() + "/holds")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletHoldRequestDto(new BigDecimal("30"), null))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(WalletHoldDto.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(HoldStatus.ACTIVE, hold.status());
+        assertBalance(wallet.getId(), 70);
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/capture")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.status").isEqualTo("CAPTURED");
+        }
+        assertBalance(wallet.getId(), 70);
+
+        webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/release")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Отмена резерва возвращает сумму в доступный баланс, подтверждение отмененного резерва - 409
+     */
+    @Test
+    void hold_release_shouldRestoreBalance() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(10000).build());
+
+        WalletHoldDto hold = webTestClient.post().uri("/api/v1/wallet/" + wallet.getId() + "/holds")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletHoldRequestDto(new BigDecimal("100"), 60L))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(WalletHoldDto.class)
+                .returnResult().getResponseBody();
+        assertBalance(wallet.getId(), 0);
+
+        // зарезервированные средства недоступны для списания
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.WITHDRAW, BigDecimal.ONE))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/release")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("RELEASED");
+        assertBalance(wallet.getId(), 100);
+
+        webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/capture")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        webTestClient.get().uri("/api/v1/wallet/holds/" + UUID.randomUUID())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * Истекший резерв не подтверждается, даже если задача отмены истекших резервов до него еще не дошла
+     */
+    @Test
+    void hold_captureExpired_shouldReturn409() {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder().amount(10000).build());
+
+        WalletHoldDto hold = webTestClient.post().uri("/api/v1/wallet/" + wallet.getId() + "/holds")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new WalletHoldRequestDto(new BigDecimal("30"), 60L))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(WalletHoldDto.class)
+                .returnResult().getResponseBody();
+        jdbcTemplate.update("UPDATE wallet_holds SET expires_at = localtimestamp - interval '1 second' WHERE id = ?",
+                hold.id());
+
+        webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/capture")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        assertBalance(wallet.getId(), 70);
+
+        webTestClient.post().uri("/api/v1/wallet/holds/" + hold.id() + "/release")
+                .exchange()
+                .expectStatus().isOk();
+        assertBalance(wallet.getId(), 100);
+    }
+
+    private void assertBalance(UUID walletId, int expected) {
+        webTestClient.get().uri("/api/v1/wallet/" + walletId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(expected);
     }
 }
@@ -0,0 +1,126 @@
+package ru.example.itktest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.exception.InsufficientFundsException;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.model.Wallet;
+import ru.example.itktest.repository.WalletRepository;
+import ru.example.itktest.service.WalletLedgerService;
+import ru.example.itktest.service.WalletService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тест режима журнала операций.
+ * Баланс по снимку и хвосту журнала не должен уйти в минус и не должен меняться после компактизации.
+ */
+@SpringBootTest(properties = {
+        "wallet.ledger.enabled=true",
+        "wallet.ledger.compaction-interval=PT1H"
+})
+@Testcontainers
+class WalletLedgerTest {
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private WalletLedgerService ledgerService;
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    /**
+     * 50 потоков выполняют 100 внесений и 200 снятий суммой 1 с кошелька с балансом 50.
+     * Итоговый баланс должен сходиться с количеством успешных снятий до и после компактизации,
+     * а после компактизации баланс должен быть перенесен в таблицу wallets.
+     */
+    @Test
+    void ledgerOperations_shouldKeepBalanceConsistent() throws Exception {
+
+        Wallet wallet = walletRepository.save(
+                Wallet.builder()
+                        .amount(50_00)
+                        .build()
+        );
+
+        int threads = 50;
+        int deposits = 100;
+        int withdrawals = 200;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(deposits + withdrawals);
+
+        AtomicInteger insufficient = new AtomicInteger();
+        // массив для ошибок
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < deposits + withdrawals; i++) {
+            OperationType type = i < deposits ? OperationType.DEPOSIT : OperationType.WITHDRAW;
+
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+
+                    walletService.walletOperation(new WalletOperationDto(
+                            wallet.getId(),
+                            type,
+                            BigDecimal.ONE
+                    ));
+
+                } catch (InsufficientFundsException e) {
+                    insufficient.incrementAndGet();
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        doneLatch.await();
+        executor.shutdown();
+
+        assertTrue(errors.isEmpty(), "Возникшие ошибки: " + errors);
+
+        BigDecimal expected = new BigDecimal(50 + deposits - (withdrawals - insufficient.get()));
+        assertTrue(expected.signum() >= 0);
+        assertEquals(0, expected.compareTo(walletService.getBalance(wallet.getId()).getAmount()));
+
+        ledgerService.compact();
+
+        assertEquals(0, expected.compareTo(walletService.getBalance(wallet.getId()).getAmount()));
+        Wallet updated = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(expected.movePointRight(2).longValueExact(), updated.getAmount());
+    }
+}
@@ -0,0 +1,134 @@
+package ru.example.itktest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.config.ReplicaLsnAdvice;
+import ru.example.itktest.config.ReplicaRoutingDataSource;
+import ru.example.itktest.dto.WalletDto;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тест маршрутизации чтения на реплики.
+ * В качестве реплики указан тот же сервер: он не в режиме восстановления, поэтому исключается проверкой,
+ * и read-only транзакции должны читать с основного сервера. Ответы на операции содержат позицию WAL.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "wallet.replicas.enabled=true",
+        "wallet.replicas.health-check-interval=100ms"
+})
+@Testcontainers
+@AutoConfigureWebTestClient
+class WalletReplicaRoutingTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("wallet.replicas.urls", postgres::getJdbcUrl);
+    }
+
+    @Test
+    void replicaNotInRecovery_shouldReadFromPrimaryWithLsn() throws Exception {
+        assertTrue(dataSource.isWrapperFor(ReplicaRoutingDataSource.class));
+        WalletDto wallet = webTestClient.post().uri("/api/v1/wallet/create")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(WalletDto.class).returnResult().getResponseBody();
+        assertNotNull(wallet);
+
+        String lsn = webTestClient.post().uri("/api/v1/wallet")
+                .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("100.00"), null))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(WalletDto.class).getResponseHeaders().getFirst(ReplicaLsnAdvice.HEADER);
+        assertNotNull(lsn);
+        ReplicaRoutingDataSource.parseLsn(lsn);
+
+        double primaryReads = meterRegistry.counter("wallet.replicas.reads", "target", "primary").count();
+        webTestClient.get().uri("/api/v1/wallet/" + wallet.getId())
+                .header(ReplicaLsnAdvice.HEADER, lsn)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.amount").isEqualTo(100);
+        assertTrue(meterRegistry.counter("wallet.replicas.reads", "target", "primary").count() > primaryReads);
+        assertEquals(0, meterRegistry.counter("wallet.replicas.reads", "target", "wallet-replica-1").count());
+    }
+
+    @Test
+    void invalidLsnHeader_shouldReturn400() {
+        webTestClient.get().uri("/api/v1/wallet")
+                .header(ReplicaLsnAdvice.HEADER, "not-a-position")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Кэш балансов загружается только с основного сервера: значение с отстающей реплики оставалось бы в кэше.
+     * Загрузка не проходит через выбор реплики, поэтому не учитывается и как чтение с основного сервера.
+     */
+    @Nested
+    @TestPropertySource(properties = "wallet.cache.enabled=true")
+    class WithBalanceCache {
+
+        @Test
+        void cacheMiss_shouldLoadFromPrimaryBypassingReplicas() {
+            WalletDto wallet = webTestClient.post().uri("/api/v1/wallet/create")
+                    .exchange()
+                    .expectStatus().isCreated()
+                    .expectBody(WalletDto.class).returnResult().getResponseBody();
+            assertNotNull(wallet);
+
+            double primaryReads = meterRegistry.counter("wallet.replicas.reads", "target", "primary").count();
+            for (int i = 0; i < 2; i++) {
+                webTestClient.get().uri("/api/v1/wallet/" + wallet.getId())
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectBody()
+                        .jsonPath("$.amount").isEqualTo(0);
+            }
+            assertEquals(primaryReads, meterRegistry.counter("wallet.replicas.reads", "target", "primary").count());
+            assertEquals(0, meterRegistry.counter("wallet.replicas.reads", "target", "wallet-replica-1").count());
+
+            webTestClient.post().uri("/api/v1/wallet")
+                    .bodyValue(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("100.00"), null))
+                    .exchange()
+                    .expectStatus().isOk();
+            webTestClient.get().uri("/api/v1/wallet/" + wallet.getId())
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.amount").isEqualTo(100);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.example.itktest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.model.Wallet;
+import ru.example.itktest.repository.WalletRepository;
+import ru.example.itktest.service.WalletService;
+import ru.example.itktest.service.WalletWriteBehindService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тест журнала отложенной записи.
+ * Подтвержденные пополнения должны учитываться в балансе до переноса в БД и переноситься ровно один раз.
+ */
+@SpringBootTest(properties = {
+        "wallet.journal.enabled=true",
+        "wallet.journal.segment-size=3600",
+        "wallet.journal.flush-interval=PT1H"
+})
+@Testcontainers
+class WalletWriteBehindTest {
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private WalletWriteBehindService writeBehindService;
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("wallet.journal.dir", Files.createTempDirectory("wallet-journal")::toString);
+    }
+
+    /**
+     * 20 потоков выполняют по 25 пополнений на 1: баланс учитывает их до переноса,
+     * а после переноса (в том числе повторного) строка кошелька содержит ту же сумму
+     */
+    @Test
+    void deposits_shouldBeVisibleBeforeFlushAndAppliedOnce() throws Exception {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(0).build());
+
+        int threads = 20;
+        int deposits = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < deposits; i++) {
+                        walletService.walletOperation(
+                                new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, BigDecimal.ONE));
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        long expected = threads * deposits * 100L;
+        assertEquals(0, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(expected, writeBehindService.getBalance(wallet.getId()));
+
+        writeBehindService.flush();
+        writeBehindService.flush();
+
+        assertEquals(expected, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(expected, writeBehindService.getBalance(wallet.getId()));
+    }
+
+    /**
+     * Списание проводится синхронно и может использовать неперенесенные пополнения
+     */
+    @Test
+    void withdraw_shouldUseJournaledDeposits() {
+
+        Wallet wallet = walletRepository.save(Wallet.builder().amount(0).build());
+
+        walletService.walletOperation(new WalletOperationDto(wallet.getId(), OperationType.DEPOSIT, new BigDecimal("100")));
+        walletService.walletOperation(new WalletOperationDto(wallet.getId(), OperationType.WITHDRAW, new BigDecimal("40")));
+
+        assertEquals(60_00, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(new BigDecimal("60.00"), walletService.getBalance(wallet.getId()).getAmount());
+    }
+}
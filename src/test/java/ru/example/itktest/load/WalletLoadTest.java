@@ -0,0 +1,327 @@
+package ru.example.itktest.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.example.itktest.dto.WalletOperationDto;
+import ru.example.itktest.model.OperationType;
+import ru.example.itktest.model.Wallet;
+import ru.example.itktest.repository.WalletRepository;
+import ru.example.itktest.service.WalletService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный прогон API кошельков через HTTP с разным количеством потоков и распределением запросов по кошелькам.
+ * <p>
+ * Каждый поток отправляет запросы с постоянной частотой (load.rate-per-thread) по расписанию. Задержка считается
+ * от запланированного времени отправки, а не от фактического, поэтому ожидание перед отправкой из-за медленных
+ * ответов тоже попадает в гистограмму (поправка на coordinated omission). Время обработки без этой поправки
+ * записывается отдельно (serviceTime).
+ * <p>
+ * Для каждой комбинации потоков (load.threads) и перекоса (load.skews, 0 - равномерно, около 1 - распределение Ципфа)
+ * записываются пропускная способность и перцентили задержек по типам операций в load.output (JSON).
+ * Исключен из обычного запуска тестов, запуск:
+ * {@code ./mvnw test -Pload -Dload.threads=1,16,64 -Dload.skews=0,0.99}
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.show-sql=false")
+@Testcontainers
+class WalletLoadTest {
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal("1000000");
+    /**
+     * Наибольшая записываемая задержка, мкс
+     */
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15")
+                    .withCommand("postgres", "-c", "max_connections=200");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    /**
+     * Тип запроса нагрузки
+     */
+    private enum Operation { DEPOSIT, WITHDRAW, BALANCE }
+
+    /**
+     * Перцентили задержек одного типа запросов, мкс
+     */
+    record Latency(long count, double p50, double p99, double p999, double max) {
+        static Latency of(Histogram histogram) {
+            return new Latency(histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxValue());
+        }
+    }
+
+    /**
+     * Результат одного прогона
+     * @param conflicts списания, отклоненные из-за недостатка средств (409)
+     * @param errors ответы с другими кодами ошибок и исключения клиента
+     */
+    record RunResult(int threads, double skew, int wallets, long durationMs, long requests, long conflicts,
+                     long errors, double throughput, Map<String, Latency> latency, Map<String, Latency> serviceTime) {
+    }
+
+    /**
+     * Гистограммы и счетчики одного потока, объединяются после прогона
+     */
+    private static final class WorkerStats {
+        final Map<Operation, Histogram> latency = new EnumMap<>(Operation.class);
+        final Map<Operation, Histogram> serviceTime = new EnumMap<>(Operation.class);
+        long requests;
+        long conflicts;
+        long errors;
+        long deposited;
+        long withdrawn;
+
+        WorkerStats() {
+            for (Operation operation : Operation.values()) {
+                latency.put(operation, new Histogram(MAX_LATENCY_MICROS, 3));
+                serviceTime.put(operation, new Histogram(MAX_LATENCY_MICROS, 3));
+            }
+        }
+
+        void add(WorkerStats other) {
+            for (Operation operation : Operation.values()) {
+                latency.get(operation).add(other.latency.get(operation));
+                serviceTime.get(operation).add(other.serviceTime.get(operation));
+            }
+            requests += other.requests;
+            conflicts += other.conflicts;
+            errors += other.errors;
+            deposited += other.deposited;
+            withdrawn += other.withdrawn;
+        }
+    }
+
+    @Test
+    void sweepThreadsAndSkew() throws Exception {
+        int[] threadCounts = Arrays.stream(System.getProperty("load.threads", "1,4,16,64").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        double[] skews = Arrays.stream(System.getProperty("load.skews", "0,0.99").split(","))
+                .map(String::trim).mapToDouble(Double::parseDouble).toArray();
+        int walletCount = Integer.getInteger("load.wallets", 1000);
+        int ratePerThread = Integer.getInteger("load.rate-per-thread", 200);
+        Duration warmup = Duration.parse(System.getProperty("load.warmup", "PT2S"));
+        Duration duration = Duration.parse(System.getProperty("load.duration", "PT10S"));
+        // доли пополнений, списаний и запросов баланса
+        int[] mix = Arrays.stream(System.getProperty("load.mix", "45,45,10").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        Path output = Path.of(System.getProperty("load.output", "target/load-results.json"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        List<RunResult> results = new ArrayList<>();
+        for (double skew : skews) {
+            for (int threads : threadCounts) {
+                List<UUID> wallets = createWallets(walletCount);
+                ZipfGenerator generator = new ZipfGenerator(walletCount, skew);
+
+                run(client, wallets, generator, mix, threads, ratePerThread, warmup);
+                WorkerStats stats = run(client, wallets, generator, mix, threads, ratePerThread, duration);
+                results.add(toResult(stats, threads, skew, walletCount, duration));
+            }
+        }
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        objectMapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+    }
+
+    private List<UUID> createWallets(int count) {
+        List<Wallet> wallets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            wallets.add(Wallet.builder().amount(INITIAL_AMOUNT.movePointRight(2).longValueExact()).build());
+        }
+        return walletRepository.saveAll(wallets).stream().map(Wallet::getId).toList();
+    }
+
+    /**
+     * Прогон нагрузки заданной длительности с проверкой итоговых балансов
+     */
+    private WorkerStats run(HttpClient client, List<UUID> wallets, ZipfGenerator generator, int[] mix,
+                            int threads, int ratePerThread, Duration duration) throws Exception {
+        BigDecimal before = totalBalance(wallets);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<WorkerStats>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            long seed = i;
+            futures.add(executor.submit(() -> {
+                startLatch.await();
+                return work(client, wallets, generator, mix, ratePerThread, duration, new SplittableRandom(seed));
+            }));
+        }
+        startLatch.countDown();
+
+        WorkerStats total = new WorkerStats();
+        for (Future<WorkerStats> future : futures) {
+            total.add(future.get());
+        }
+        executor.shutdown();
+
+        // при ошибке клиента неизвестно, проведена ли операция
+        if (total.errors == 0) {
+            BigDecimal expected = before.add(BigDecimal.valueOf(total.deposited - total.withdrawn));
+            assertEquals(0, expected.compareTo(totalBalance(wallets)), "Сумма балансов не совпадает с проведенными операциями");
+        }
+        return total;
+    }
+
+    /**
+     * Цикл одного потока: запросы по расписанию с интервалом 1 / ratePerThread
+     */
+    private WorkerStats work(HttpClient client, List<UUID> wallets, ZipfGenerator generator, int[] mix,
+                             int ratePerThread, Duration duration, SplittableRandom random) throws IOException {
+        WorkerStats stats = new WorkerStats();
+        long interval = TimeUnit.SECONDS.toNanos(1) / ratePerThread;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        int mixTotal = mix[0] + mix[1] + mix[2];
+
+        for (long intended = start; intended < end; intended += interval) {
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+
+            UUID walletId = wallets.get(generator.next(random));
+            int choice = random.nextInt(mixTotal);
+            Operation operation = choice < mix[0] ? Operation.DEPOSIT
+                    : choice < mix[0] + mix[1] ? Operation.WITHDRAW : Operation.BALANCE;
+
+            long sent = System.nanoTime();
+            int status = send(client, operation, walletId);
+            long received = System.nanoTime();
+
+            stats.latency.get(operation).recordValue(Math.min(toMicros(received - intended), MAX_LATENCY_MICROS));
+            stats.serviceTime.get(operation).recordValue(Math.min(toMicros(received - sent), MAX_LATENCY_MICROS));
+            stats.requests++;
+            if (status == 200) {
+                if (operation == Operation.DEPOSIT) {
+                    stats.deposited++;
+                } else if (operation == Operation.WITHDRAW) {
+                    stats.withdrawn++;
+                }
+            } else if (status == 409) {
+                stats.conflicts++;
+            } else {
+                stats.errors++;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Отправка запроса, пополнение и списание - на сумму 1
+     * @return код ответа, либо -1 при ошибке клиента
+     */
+    private int send(HttpClient client, Operation operation, UUID walletId) throws IOException {
+        String base = "http://localhost:" + port + "/api/v1/wallet";
+        HttpRequest request = switch (operation) {
+            case BALANCE -> HttpRequest.newBuilder(URI.create(base + "/" + walletId)).GET().build();
+            case DEPOSIT, WITHDRAW -> HttpRequest.newBuilder(URI.create(base))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new WalletOperationDto(
+                            walletId,
+                            operation == Operation.DEPOSIT ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                            BigDecimal.ONE))))
+                    .build();
+        };
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private BigDecimal totalBalance(List<UUID> wallets) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (UUID id : wallets) {
+            total = total.add(walletService.getBalance(id).getAmount());
+        }
+        return total;
+    }
+
+    private static RunResult toResult(WorkerStats stats, int threads, double skew, int wallets, Duration duration) {
+        Map<String, Latency> latency = new LinkedHashMap<>();
+        Map<String, Latency> serviceTime = new LinkedHashMap<>();
+        Histogram allLatency = new Histogram(MAX_LATENCY_MICROS, 3);
+        Histogram allServiceTime = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (Operation operation : Operation.values()) {
+            latency.put(operation.name(), Latency.of(stats.latency.get(operation)));
+            serviceTime.put(operation.name(), Latency.of(stats.serviceTime.get(operation)));
+            allLatency.add(stats.latency.get(operation));
+            allServiceTime.add(stats.serviceTime.get(operation));
+        }
+        latency.put("ALL", Latency.of(allLatency));
+        serviceTime.put("ALL", Latency.of(allServiceTime));
+
+        double throughput = stats.requests * 1000.0 / duration.toMillis();
+        return new RunResult(threads, skew, wallets, duration.toMillis(), stats.requests, stats.conflicts,
+                stats.errors, throughput, latency, serviceTime);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.example.itktest.load;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Выбор номера кошелька из [0, n) по закону Ципфа: вероятность k-го кошелька пропорциональна 1 / (k + 1)^skew.
+ * skew = 0 - равномерный выбор, при skew около 1 большая часть запросов приходится на несколько первых кошельков.
+ */
+final class ZipfGenerator {
+    /**
+     * Накопленные вероятности кошельков
+     */
+    private final double[] cdf;
+
+    ZipfGenerator(int n, double skew) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    int next(RandomGenerator random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        // при отсутствии точного совпадения - первый элемент больше случайного числа
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+}